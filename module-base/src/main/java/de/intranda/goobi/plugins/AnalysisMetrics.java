@@ -0,0 +1,108 @@
+package de.intranda.goobi.plugins;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.goobi.production.enums.PluginReturnValue;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Measurements of a single analysis: duration of each phase, number of images and the number of hits per rule. Phases are recorded in the order
+ * in which they were executed.
+ */
+@Getter
+public class AnalysisMetrics {
+
+    public static final String PHASE_LISTING = "listing";
+    public static final String PHASE_READING = "reading";
+    public static final String PHASE_CLASSIFICATION = "classification";
+    public static final String PHASE_CROSS_CHECK = "crossCheck";
+    public static final String PHASE_ASSEMBLY = "assembly";
+    public static final String PHASE_ORDERING = "ordering";
+    public static final String PHASE_JOURNAL = "journal";
+    public static final String PHASE_WRITING = "writing";
+
+    /** key of the rule hit histogram used for images matching the pagination regex */
+    public static final String PAGINATION_RULE = "pagination";
+
+    private final Integer processId;
+
+    private final String processTitle;
+
+    private final long startTime = System.nanoTime();
+
+    private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+
+    private final Map<String, Integer> ruleHits = new TreeMap<>();
+
+    private int imageCount;
+
+    private int unmatchedCount;
+
+    private long totalNanos;
+
+    @Setter
+    private PluginReturnValue result;
+
+    @Getter(AccessLevel.NONE)
+    private long phaseStart = System.nanoTime();
+
+    public AnalysisMetrics(Integer processId, String processTitle) {
+        this.processId = processId;
+        this.processTitle = processTitle;
+    }
+
+    /**
+     * Finish the current phase and add its duration to the given name. The next phase starts immediately.
+     *
+     * @param phase name of the phase
+     */
+    public void endPhase(String phase) {
+        long now = System.nanoTime();
+        phaseNanos.merge(phase, now - phaseStart, Long::sum);
+        phaseStart = now;
+    }
+
+    public void setImageCount(int imageCount) {
+        this.imageCount = imageCount;
+    }
+
+    public void countRuleHit(String rule) {
+        ruleHits.merge(rule, 1, Integer::sum);
+    }
+
+    public void countUnmatched() {
+        unmatchedCount++;
+    }
+
+    /**
+     * @return number of images matching the pagination or a structure rule
+     */
+    public int getMatchedCount() {
+        int matched = 0;
+        for (Integer hits : ruleHits.values()) {
+            matched += hits;
+        }
+        return matched;
+    }
+
+    public Map<String, Long> getPhaseNanos() {
+        return Collections.unmodifiableMap(phaseNanos);
+    }
+
+    public Map<String, Integer> getRuleHits() {
+        return Collections.unmodifiableMap(ruleHits);
+    }
+
+    /**
+     * Stop the overall measurement
+     */
+    public void finish() {
+        totalNanos = System.nanoTime() - startTime;
+    }
+}
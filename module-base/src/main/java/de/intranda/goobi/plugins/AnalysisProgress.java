@@ -0,0 +1,94 @@
+package de.intranda.goobi.plugins;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import lombok.Getter;
+
+/**
+ * Progress of a single analysis, it can be cancelled from another thread. The analysis checks for a cancellation between its phases and while
+ * processing the images, and stops with an {@link AnalysisCancelledException}. A cancellation is no longer possible once the metadata file is
+ * written.
+ */
+public class AnalysisProgress {
+
+    @Getter
+    private volatile String phase = AnalysisMetrics.PHASE_LISTING;
+
+    @Getter
+    private volatile int total;
+
+    /** updated by all threads of a parallel classification, an adder avoids the contention of a single atomic counter */
+    private final LongAdder processed = new LongAdder();
+
+    private volatile boolean cancelled;
+
+    /**
+     * Start a new phase
+     *
+     * @param phase name of the phase
+     * @param total number of images to process in this phase
+     */
+    public void startPhase(String phase, int total) {
+        this.phase = phase;
+        this.total = total;
+        processed.reset();
+        checkpoint();
+    }
+
+    /**
+     * Count a processed image and stop, if the analysis was cancelled
+     */
+    public void advance() {
+        advance(1);
+    }
+
+    /**
+     * Count several processed images, e.g. a chunk of a parallel classification, and stop, if the analysis was cancelled
+     *
+     * @param count number of processed images
+     */
+    public void advance(int count) {
+        processed.add(count);
+        checkpoint();
+    }
+
+    /**
+     * Stop, if the analysis was cancelled
+     *
+     * @throws AnalysisCancelledException if the analysis was cancelled
+     */
+    public void checkpoint() {
+        if (cancelled) {
+            throw new AnalysisCancelledException(phase);
+        }
+    }
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return number of images processed in the current phase
+     */
+    public int getProcessed() {
+        return processed.intValue();
+    }
+
+    @Override
+    public String toString() {
+        return phase + ": " + processed.sum() + "/" + total;
+    }
+
+    public static class AnalysisCancelledException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        public AnalysisCancelledException(String phase) {
+            super("analysis was cancelled during " + phase);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.apache.commons.configuration.HierarchicalConfiguration;
+import org.apache.commons.configuration.XMLConfiguration;
+import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine;
+import org.apache.commons.lang.StringUtils;
+
+import de.sub.goobi.config.ConfigPlugins;
+import de.sub.goobi.config.ConfigurationHelper;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j;
+
+/**
+ * Immutable snapshot of the compiled plugin configuration. Snapshots are shared by all plugin instances and are only parsed again, when the
+ * configuration file was changed on disk.
+ */
+@Getter
+@Log4j
+public class AnalyzerConfiguration {
+
+    private static final Map<String, AnalyzerConfiguration> CACHE = new ConcurrentHashMap<>();
+
+    /** modification time and size of the configuration file this snapshot was created from */
+    private final String fileStamp;
+
+    private final Pattern imagePattern;
+
+    private final PaginationMatcher paginationMatcher;
+
+    private final boolean skipWhenDataExists;
+
+    private final boolean orderImagesByDocstruct;
+
+    /** update an existing pagination instead of replacing it */
+    private final boolean incrementalUpdate;
+
+    /** read the image folder with a directory stream instead of the storage provider */
+    private final boolean streamingListing;
+
+    /** lower case file extensions included by the streaming listing, empty for all files */
+    private final Set<String> listingExtensions;
+
+    /** order numbers within the image names by their value in the streaming listing */
+    private final boolean naturalSort;
+
+    private final Map<String, String> docstructMap;
+
+    private final StructureRuleMatcher structureRuleMatcher;
+
+    private final DocstructOrder docstructOrder;
+
+    /** hash over all settings that influence the classification of an image name */
+    private final String classificationHash;
+
+    private final boolean classificationCache;
+
+    private final int classificationCacheMaxAgeDays;
+
+    /** maximum size of a cache file in characters */
+    private final long classificationCacheMaxSize;
+
+    /** minimum number of images to classify them in parallel, 0 disables the parallel classification */
+    private final int parallelClassificationThreshold;
+
+    private final int maxUnmatchedImagesInJournal;
+
+    private final boolean writeUnmatchedImagesFile;
+
+    /** class name of the metrics sink, empty for the default sink */
+    private final String metricsSink;
+
+    /** names of the derivative folders that must match the master folder */
+    private final List<String> crossCheckFolders;
+
+    /** number of processes analysed at the same time in batch mode */
+    private final int batchConcurrency;
+
+    /** background classification of folders that are still being filled: off, watch or poll */
+    private final String preAnalysis;
+
+    /** seconds between two listings of a polled folder */
+    private final int preAnalysisPollInterval;
+
+    private final int preAnalysisMaxIdleHours;
+
+    /** titles of the steps that start the pre-analysis of the image folder instead of analysing it */
+    private final List<String> preAnalysisSteps;
+
+    public AnalyzerConfiguration(XMLConfiguration config, String fileStamp) {
+        this.fileStamp = fileStamp;
+        config.setExpressionEngine(new XPathExpressionEngine());
+        imagePattern = Pattern.compile(config.getString("/paginationRegex"));
+        paginationMatcher = new PaginationMatcher(imagePattern, config.getLong("/paginationRegexBudget", 100000));
+        skipWhenDataExists = config.getBoolean("/skipWhenDataExists", false);
+        orderImagesByDocstruct = config.getBoolean("/orderImagesByDocstruct", false);
+        incrementalUpdate = config.getBoolean("/incrementalUpdate", false);
+        streamingListing = config.getBoolean("/streamingListing", false);
+        Set<String> extensions = new HashSet<>();
+        for (String extension : config.getString("/listingExtensions", "").split(",")) {
+            if (!extension.trim().isEmpty()) {
+                extensions.add(extension.trim().toLowerCase(Locale.ROOT));
+            }
+        }
+        listingExtensions = Collections.unmodifiableSet(extensions);
+        naturalSort = config.getBoolean("/naturalSort", false);
+
+        Map<String, String> rules = new LinkedHashMap<>();
+        List<HierarchicalConfiguration> itemList = config.configurationsAt("/structureList/item");
+        for (HierarchicalConfiguration item : itemList) {
+            rules.put(item.getString("@filepart"), item.getString("@docstruct"));
+        }
+        docstructMap = Collections.unmodifiableMap(rules);
+        structureRuleMatcher = new StructureRuleMatcher(docstructMap);
+
+        List<HierarchicalConfiguration> orderList = config.configurationsAt("/docstructOrder/item");
+        if (orderList.isEmpty()) {
+            docstructOrder = new DocstructOrder(DocstructOrder.DEFAULT_ORDER);
+        } else {
+            List<String> fileparts = new ArrayList<>();
+            for (HierarchicalConfiguration item : orderList) {
+                if (item.getBoolean("@textblock", false)) {
+                    fileparts.add(null);
+                } else if (StringUtils.isNotBlank(item.getString("@filepart"))) {
+                    fileparts.add(item.getString("@filepart"));
+                } else {
+                    log.warn("Ignoring docstructOrder item without filepart, use textblock=\"true\" to mark the position of the text block");
+                }
+            }
+            docstructOrder = new DocstructOrder(fileparts);
+        }
+
+        List<String> classificationSettings = new ArrayList<>();
+        classificationSettings.add(imagePattern.pattern());
+        classificationSettings.add(String.valueOf(paginationMatcher.getBudget()));
+        for (Map.Entry<String, String> rule : docstructMap.entrySet()) {
+            classificationSettings.add(rule.getKey());
+            classificationSettings.add(rule.getValue());
+        }
+        classificationHash = ClassificationCache.hash(classificationSettings);
+        classificationCache = config.getBoolean("/classificationCache", false);
+        classificationCacheMaxAgeDays = config.getInt("/classificationCacheMaxAgeDays", 30);
+        classificationCacheMaxSize = config.getLong("/classificationCacheMaxSize", 10 * 1024 * 1024);
+
+        parallelClassificationThreshold = config.getInt("/parallelClassificationThreshold", 5000);
+        maxUnmatchedImagesInJournal = config.getInt("/maxUnmatchedImagesInJournal", 20);
+        writeUnmatchedImagesFile = config.getBoolean("/writeUnmatchedImagesFile", false);
+        List<String> folders = new ArrayList<>();
+        for (Object folder : config.getList("/crossCheckFolder")) {
+            if (!String.valueOf(folder).trim().isEmpty()) {
+                folders.add(String.valueOf(folder).trim());
+            }
+        }
+        crossCheckFolders = Collections.unmodifiableList(folders);
+        batchConcurrency = config.getInt("/batchConcurrency", 4);
+        preAnalysis = config.getString("/preAnalysis", PreAnalysisWatcher.MODE_OFF).trim().toLowerCase();
+        preAnalysisPollInterval = Math.max(1, config.getInt("/preAnalysisPollInterval", 60));
+        preAnalysisMaxIdleHours = config.getInt("/preAnalysisMaxIdleHours", 72);
+        List<String> steps = new ArrayList<>();
+        for (Object step : config.getList("/preAnalysisStep")) {
+            if (!String.valueOf(step).trim().isEmpty()) {
+                steps.add(String.valueOf(step).trim());
+            }
+        }
+        preAnalysisSteps = Collections.unmodifiableList(steps);
+        metricsSink = config.getString("/metricsSink", "");
+    }
+
+    /**
+     * Get the compiled configuration of the given plugin. The configuration file is only parsed again, if its modification time or size changed
+     * since the last call.
+     *
+     * @param title name of the plugin
+     * @return the current configuration snapshot
+     */
+    public static AnalyzerConfiguration getInstance(String title) {
+        String stamp = readFileStamp(title);
+        AnalyzerConfiguration current = CACHE.get(title);
+        if (current != null && current.fileStamp.equals(stamp)) {
+            return current;
+        }
+        return CACHE.compute(title, (key, cached) -> {
+            if (cached != null && cached.fileStamp.equals(stamp)) {
+                return cached;
+            }
+            log.debug("Loading configuration of " + key);
+            return new AnalyzerConfiguration(ConfigPlugins.getPluginConfig(key), stamp);
+        });
+    }
+
+    private static String readFileStamp(String title) {
+        Path configFile = Paths.get(ConfigurationHelper.getInstance().getConfigurationFolder(), "plugin_" + title + ".xml");
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(configFile, BasicFileAttributes.class);
+            return attributes.lastModifiedTime().toMillis() + "-" + attributes.size();
+        } catch (IOException e) {
+            // file is missing or not readable, ConfigPlugins falls back to an empty configuration
+            return "";
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.goobi.beans.Process;
+import org.goobi.production.enums.PluginReturnValue;
+
+import de.sub.goobi.metadaten.MetadatenSperrung;
+import de.sub.goobi.persistence.managers.ProcessManager;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j;
+
+/**
+ * Runs the image name analysis for many processes at once, e.g. after the structureList was changed. The processes are analysed on a bounded
+ * thread pool, so reading and writing the metadata files of different processes overlaps. A failing process is reported in its result and does
+ * not affect the other processes. Processes opened in the METS editor are skipped, their metadata file is not touched.
+ */
+@Log4j
+public class BatchReanalysis {
+
+    private final ImageNameAnalyzer analyzer;
+
+    private final int concurrency;
+
+    private volatile boolean cancelled;
+
+    public BatchReanalysis() {
+        this(new ImageNameAnalyzer());
+    }
+
+    public BatchReanalysis(ImageNameAnalyzer analyzer) {
+        this.analyzer = analyzer;
+        this.concurrency = Math.max(1, analyzer.getConfiguration().getBatchConcurrency());
+    }
+
+    /**
+     * Analyse all processes of a project
+     *
+     * @param projectId id of the project
+     * @return the results of all processes
+     */
+    public BatchSummary runForProject(int projectId) {
+        return runForFilter("prozesse.ProjekteID = " + projectId);
+    }
+
+    /**
+     * Analyse all processes matching the given filter
+     *
+     * @param filter sql filter as used by the process list
+     * @return the results of all processes
+     */
+    public BatchSummary runForFilter(String filter) {
+        return run(ProcessManager.getIdsForFilter(filter));
+    }
+
+    /**
+     * Analyse the given processes
+     *
+     * @param processIds ids of the processes
+     * @return the results of all processes in the order of the given ids
+     */
+    public BatchSummary run(List<Integer> processIds) {
+        cancelled = false;
+        long start = System.nanoTime();
+        List<Future<ProcessResult>> futures = new ArrayList<>(processIds.size());
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(concurrency, Math.max(1, processIds.size())), new AnalyzerThreadFactory());
+        try {
+            for (Integer processId : processIds) {
+                futures.add(executor.submit(() -> analyse(processId)));
+            }
+            List<ProcessResult> results = new ArrayList<>(futures.size());
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    results.add(new ProcessResult(processIds.get(i), null, PluginReturnValue.ERROR, 0, String.valueOf(e.getCause())));
+                }
+            }
+            BatchSummary summary = new BatchSummary(results, System.nanoTime() - start);
+            log.info(summary);
+            return summary;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+            throw new IllegalStateException("batch analysis was interrupted", e);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Cancel the running analyses and skip all processes that were not started yet
+     */
+    public void cancel() {
+        cancelled = true;
+        analyzer.cancel();
+    }
+
+    private ProcessResult analyse(Integer processId) {
+        long start = System.nanoTime();
+        if (cancelled) {
+            return ProcessResult.skipped(processId, null, 0, "cancelled");
+        }
+        Process process = null;
+        try {
+            process = ProcessManager.getProcessById(processId);
+            if (process == null) {
+                return new ProcessResult(processId, null, PluginReturnValue.ERROR, System.nanoTime() - start, "process not found");
+            }
+            if (MetadatenSperrung.isLocked(processId)) {
+                log.info("Skipping process " + processId + ", its metadata is locked in the METS editor");
+                return ProcessResult.skipped(processId, process.getTitel(), System.nanoTime() - start, "metadata locked in the METS editor");
+            }
+            PluginReturnValue value = analyzer.run(process);
+            return new ProcessResult(processId, process.getTitel(), value, System.nanoTime() - start, null);
+        } catch (RuntimeException e) {
+            log.error("Analysis of process " + processId + " failed", e);
+            return new ProcessResult(processId, process == null ? null : process.getTitel(), PluginReturnValue.ERROR, System.nanoTime() - start,
+                    e.toString());
+        }
+    }
+
+    @Getter
+    public static class ProcessResult {
+        private final Integer processId;
+        private final String processTitle;
+        private final PluginReturnValue returnValue;
+        private final long durationNanos;
+        private final String errorMessage;
+        /** true if the process was not analysed, e.g. because its metadata is locked or the batch was cancelled. The reason is the error message */
+        private final boolean skipped;
+
+        public ProcessResult(Integer processId, String processTitle, PluginReturnValue returnValue, long durationNanos, String errorMessage) {
+            this(processId, processTitle, returnValue, durationNanos, errorMessage, false);
+        }
+
+        private ProcessResult(Integer processId, String processTitle, PluginReturnValue returnValue, long durationNanos, String errorMessage,
+                boolean skipped) {
+            this.processId = processId;
+            this.processTitle = processTitle;
+            this.returnValue = returnValue;
+            this.durationNanos = durationNanos;
+            this.errorMessage = errorMessage;
+            this.skipped = skipped;
+        }
+
+        /**
+         * Result of a process that was left untouched, it can be analysed in a later run
+         */
+        public static ProcessResult skipped(Integer processId, String processTitle, long durationNanos, String reason) {
+            return new ProcessResult(processId, processTitle, PluginReturnValue.WAIT, durationNanos, reason, true);
+        }
+    }
+
+    @Getter
+    public static class BatchSummary {
+        private final List<ProcessResult> results;
+        private final long elapsedNanos;
+        private final int finished;
+        private final int skipped;
+        private final int failed;
+
+        public BatchSummary(List<ProcessResult> results, long elapsedNanos) {
+            this.results = results;
+            this.elapsedNanos = elapsedNanos;
+            int finishedCount = 0;
+            int skippedCount = 0;
+            for (ProcessResult result : results) {
+                if (result.isSkipped()) {
+                    skippedCount++;
+                } else if (result.getReturnValue() == PluginReturnValue.FINISH) {
+                    finishedCount++;
+                }
+            }
+            this.finished = finishedCount;
+            this.skipped = skippedCount;
+            this.failed = results.size() - finishedCount - skippedCount;
+        }
+
+        /**
+         * @return analysed processes per second
+         */
+        public double getThroughput() {
+            return elapsedNanos == 0 ? 0 : results.size() / (elapsedNanos / 1_000_000_000d);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Image name analysis of %d processes: %d finished, %d skipped, %d failed in %.1f s (%.2f processes/s)", results.size(),
+                    finished, skipped, failed, elapsedNanos / 1_000_000_000d, getThroughput());
+        }
+    }
+
+    private static class AnalyzerThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "imagename-analyse-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
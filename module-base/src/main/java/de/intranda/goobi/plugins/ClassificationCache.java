@@ -0,0 +1,189 @@
+package de.intranda.goobi.plugins;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+import de.intranda.goobi.plugins.StructureRuleMatcher.StructureMatch;
+import lombok.extern.log4j.Log4j;
+
+/**
+ * Stores the classification results of a folder in a small file within the process folder. The file is only used again, if the image names and
+ * the classification relevant part of the configuration are unchanged and the file is not older than the configured maximum age.
+ *
+ * The file starts with a header line containing the format version, the configuration hash, the fingerprint of the image names and the creation
+ * time. It is followed by one line per image: <code>P pagination</code>, <code>S filepart docstruct group</code> or <code>U</code>, separated by
+ * tabs. The file is replaced atomically, so an interrupted write cannot leave a truncated entry behind.
+ */
+@Log4j
+public class ClassificationCache {
+
+    public static final String FILE_NAME = "imagename_analyse_classification.cache";
+
+    private static final String VERSION = "1";
+
+    private final Path file;
+
+    private final String configurationHash;
+
+    private final long maxAgeMillis;
+
+    private final long maxSize;
+
+    public ClassificationCache(Path file, AnalyzerConfiguration configuration) {
+        this.file = file;
+        this.configurationHash = configuration.getClassificationHash();
+        this.maxAgeMillis = configuration.getClassificationCacheMaxAgeDays() * 24L * 60 * 60 * 1000;
+        this.maxSize = configuration.getClassificationCacheMaxSize();
+    }
+
+    /**
+     * Load the cached classification of the given image names
+     *
+     * @param imageNames the image names in folder order
+     * @return the cached classifications, or null if no valid cache entry exists
+     */
+    public ImageClassification[] load(List<String> imageNames) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String[] header = split(reader.readLine());
+            if (header.length != 4 || !VERSION.equals(header[0]) || !configurationHash.equals(header[1])) {
+                return null;
+            }
+            if (System.currentTimeMillis() - Long.parseLong(header[3]) > maxAgeMillis) {
+                // entry expired, remove it
+                Files.deleteIfExists(file);
+                return null;
+            }
+            if (!fingerprint(imageNames).equals(header[2])) {
+                return null;
+            }
+
+            ImageClassification[] classifications = new ImageClassification[imageNames.size()];
+            for (int i = 0; i < classifications.length; i++) {
+                String[] fields = split(reader.readLine());
+                String imageName = imageNames.get(i);
+                if (fields.length == 2 && "P".equals(fields[0])) {
+                    classifications[i] = new ImageClassification(imageName, fields[1], null);
+                } else if (fields.length == 4 && "S".equals(fields[0])) {
+                    classifications[i] = new ImageClassification(imageName, null, new StructureMatch(fields[1], fields[2], fields[3]));
+                } else if (fields.length == 1 && "U".equals(fields[0])) {
+                    classifications[i] = new ImageClassification(imageName, null, null);
+                } else {
+                    return null;
+                }
+            }
+            return classifications;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Cannot read classification cache " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Store the classification of the given image names. Results exceeding the maximum size are not stored.
+     *
+     * @param imageNames the image names in folder order
+     * @param classifications the classifications in the same order
+     */
+    public void store(List<String> imageNames, ImageClassification[] classifications) {
+        StringBuilder content = new StringBuilder();
+        content.append(VERSION).append('\t').append(configurationHash).append('\t').append(fingerprint(imageNames)).append('\t');
+        content.append(System.currentTimeMillis()).append('\n');
+        for (ImageClassification classification : classifications) {
+            StructureMatch structureMatch = classification.getStructureMatch();
+            if (classification.getPagination() != null) {
+                content.append("P\t").append(classification.getPagination());
+            } else if (structureMatch != null) {
+                content.append("S\t").append(structureMatch.getFilepart()).append('\t').append(structureMatch.getDocstruct()).append('\t');
+                content.append(structureMatch.getGroupNumber());
+            } else {
+                content.append('U');
+            }
+            content.append('\n');
+            if (content.length() > maxSize) {
+                log.debug("Classification of " + imageNames.size() + " images exceeds the cache size, it is not cached");
+                try {
+                    Files.deleteIfExists(file);
+                } catch (IOException e) {
+                    log.warn("Cannot delete classification cache " + file, e);
+                }
+                return;
+            }
+        }
+        // write a temporary file next to the cache and rename it, so a reader never sees a partially written file
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(file.toAbsolutePath().getParent(), FILE_NAME, ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writer.write(content.toString());
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            log.warn("Cannot write classification cache " + file, e);
+            deleteQuietly(temp);
+        }
+    }
+
+    private static void deleteQuietly(Path temp) {
+        if (temp != null) {
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException e) {
+                log.warn("Cannot delete temporary file " + temp, e);
+            }
+        }
+    }
+
+    private static String[] split(String line) {
+        // keep empty trailing fields, the group number can be empty
+        return line == null ? new String[0] : line.split("\t", -1);
+    }
+
+    /**
+     * @param imageNames the image names in folder order
+     * @return a hash over all image names
+     */
+    public static String fingerprint(List<String> imageNames) {
+        return hash(imageNames);
+    }
+
+    /**
+     * Create a SHA-256 hash over the given values
+     *
+     * @param values the values to hash
+     * @return the hash as hex string
+     */
+    public static String hash(Iterable<String> values) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String value : values) {
+                digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+                // separator, so that [ab, c] and [a, bc] differ
+                digest.update((byte) 0);
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // every java runtime supports SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+}
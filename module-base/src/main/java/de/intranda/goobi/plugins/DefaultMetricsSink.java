@@ -0,0 +1,185 @@
+package de.intranda.goobi.plugins;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.goobi.production.enums.PluginReturnValue;
+
+import lombok.extern.log4j.Log4j;
+
+/**
+ * Writes one structured log line per analysis and accumulates counters, which are registered as MBean
+ * <code>de.intranda.goobi.plugins:type=ImageNameAnalyzer</code> and can be read with any JMX client.
+ */
+@Log4j
+public class DefaultMetricsSink implements MetricsSink, DefaultMetricsSinkMBean {
+
+    private static final String OBJECT_NAME = "de.intranda.goobi.plugins:type=ImageNameAnalyzer";
+
+    private static final DefaultMetricsSink INSTANCE = new DefaultMetricsSink();
+
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder failedExecutions = new LongAdder();
+    private final LongAdder images = new LongAdder();
+    private final LongAdder matchedImages = new LongAdder();
+    private final LongAdder unmatchedImages = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final Map<String, LongAdder> phaseNanos = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> ruleHits = new ConcurrentHashMap<>();
+
+    private DefaultMetricsSink() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            // the plugin class loader can be created more than once, replace a bean of a former instance
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            log.warn("Cannot register metrics bean " + OBJECT_NAME, e);
+        }
+    }
+
+    public static DefaultMetricsSink getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public void publish(AnalysisMetrics metrics) {
+        executions.increment();
+        if (metrics.getResult() != PluginReturnValue.FINISH) {
+            failedExecutions.increment();
+        }
+        images.add(metrics.getImageCount());
+        matchedImages.add(metrics.getMatchedCount());
+        unmatchedImages.add(metrics.getUnmatchedCount());
+        totalNanos.add(metrics.getTotalNanos());
+        for (Map.Entry<String, Long> phase : metrics.getPhaseNanos().entrySet()) {
+            phaseNanos.computeIfAbsent(phase.getKey(), k -> new LongAdder()).add(phase.getValue());
+        }
+        for (Map.Entry<String, Integer> rule : metrics.getRuleHits().entrySet()) {
+            ruleHits.computeIfAbsent(rule.getKey(), k -> new LongAdder()).add(rule.getValue());
+        }
+
+        if (log.isInfoEnabled()) {
+            StringBuilder line = new StringBuilder("image name analysis");
+            line.append(" processId=").append(metrics.getProcessId());
+            line.append(" process=\"").append(metrics.getProcessTitle()).append('"');
+            line.append(" result=").append(metrics.getResult());
+            line.append(" images=").append(metrics.getImageCount());
+            line.append(" matched=").append(metrics.getMatchedCount());
+            line.append(" unmatched=").append(metrics.getUnmatchedCount());
+            line.append(" totalMs=").append(TimeUnit.NANOSECONDS.toMillis(metrics.getTotalNanos()));
+            for (Map.Entry<String, Long> phase : metrics.getPhaseNanos().entrySet()) {
+                line.append(' ').append(phase.getKey()).append("Ms=").append(TimeUnit.NANOSECONDS.toMillis(phase.getValue()));
+            }
+            line.append(" ruleHits=").append(metrics.getRuleHits());
+            log.info(line);
+        }
+    }
+
+    private long phaseMillis(String phase) {
+        LongAdder nanos = phaseNanos.get(phase);
+        return nanos == null ? 0 : TimeUnit.NANOSECONDS.toMillis(nanos.sum());
+    }
+
+    @Override
+    public long getExecutions() {
+        return executions.sum();
+    }
+
+    @Override
+    public long getFailedExecutions() {
+        return failedExecutions.sum();
+    }
+
+    @Override
+    public long getImages() {
+        return images.sum();
+    }
+
+    @Override
+    public long getMatchedImages() {
+        return matchedImages.sum();
+    }
+
+    @Override
+    public long getUnmatchedImages() {
+        return unmatchedImages.sum();
+    }
+
+    @Override
+    public long getTotalMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(totalNanos.sum());
+    }
+
+    @Override
+    public long getListingMillis() {
+        return phaseMillis(AnalysisMetrics.PHASE_LISTING);
+    }
+
+    @Override
+    public long getReadingMillis() {
+        return phaseMillis(AnalysisMetrics.PHASE_READING);
+    }
+
+    @Override
+    public long getClassificationMillis() {
+        return phaseMillis(AnalysisMetrics.PHASE_CLASSIFICATION);
+    }
+
+    @Override
+    public long getCrossCheckMillis() {
+        return phaseMillis(AnalysisMetrics.PHASE_CROSS_CHECK);
+    }
+
+    @Override
+    public long getAssemblyMillis() {
+        return phaseMillis(AnalysisMetrics.PHASE_ASSEMBLY);
+    }
+
+    @Override
+    public long getOrderingMillis() {
+        return phaseMillis(AnalysisMetrics.PHASE_ORDERING);
+    }
+
+    @Override
+    public long getJournalMillis() {
+        return phaseMillis(AnalysisMetrics.PHASE_JOURNAL);
+    }
+
+    @Override
+    public long getWritingMillis() {
+        return phaseMillis(AnalysisMetrics.PHASE_WRITING);
+    }
+
+    @Override
+    public String getRuleHits() {
+        Map<String, Long> hits = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> rule : ruleHits.entrySet()) {
+            hits.put(rule.getKey(), rule.getValue().sum());
+        }
+        return hits.toString();
+    }
+
+    @Override
+    public void reset() {
+        executions.reset();
+        failedExecutions.reset();
+        images.reset();
+        matchedImages.reset();
+        unmatchedImages.reset();
+        totalNanos.reset();
+        phaseNanos.clear();
+        ruleHits.clear();
+    }
+}
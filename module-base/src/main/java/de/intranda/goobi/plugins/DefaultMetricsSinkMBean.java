@@ -0,0 +1,39 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * JMX view on the accumulated measurements of all analyses since startup
+ */
+public interface DefaultMetricsSinkMBean {
+
+    long getExecutions();
+
+    long getFailedExecutions();
+
+    long getImages();
+
+    long getMatchedImages();
+
+    long getUnmatchedImages();
+
+    long getTotalMillis();
+
+    long getListingMillis();
+
+    long getReadingMillis();
+
+    long getClassificationMillis();
+
+    long getCrossCheckMillis();
+
+    long getAssemblyMillis();
+
+    long getOrderingMillis();
+
+    long getJournalMillis();
+
+    long getWritingMillis();
+
+    String getRuleHits();
+
+    void reset();
+}
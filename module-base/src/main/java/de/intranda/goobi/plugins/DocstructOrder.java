@@ -0,0 +1,87 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.intranda.goobi.plugins.StructureRuleMatcher.StructureMatch;
+
+/**
+ * Rank table for the order of docstructs, used if the images are ordered by docstruct. Docstructs are sorted by the configured position of their
+ * filepart, docstructs of the same filepart by their group number, e.g. VS, VS1, VS2. Fileparts without a configured position are placed at the
+ * end, sorted by name.
+ */
+public class DocstructOrder {
+
+    /** order used if the configuration does not contain a docstructOrder */
+    static final List<String> DEFAULT_ORDER = Collections.unmodifiableList(Arrays.asList("VD", "VDS", "VS", null, "NS", "HDS", "HD", "ER", "SV",
+            "SO", "SU", "Farbkarte", "Farbkarte_Buchblock", "Farbkarte_Bucheinband", "Farbkarte_Einband", "FR", "Fragm"));
+
+    private final Map<String, Integer> ranks = new HashMap<>();
+
+    private final int textblockRank;
+
+    private final int unknownRank;
+
+    /**
+     * @param fileparts the fileparts in the expected order, null marks the position of the text block
+     */
+    public DocstructOrder(List<String> fileparts) {
+        int textblock = -1;
+        for (int i = 0; i < fileparts.size(); i++) {
+            String filepart = fileparts.get(i);
+            if (filepart == null) {
+                textblock = i;
+            } else {
+                ranks.putIfAbsent(filepart, i);
+            }
+        }
+        // without a configured position, the text block follows all configured docstructs. Unknown fileparts are always placed last
+        textblockRank = textblock == -1 ? fileparts.size() : textblock;
+        unknownRank = fileparts.size() + 1;
+    }
+
+    public int getTextblockRank() {
+        return textblockRank;
+    }
+
+    /**
+     * @param filepart a filepart of the structureList
+     * @return the position of the filepart, all unknown fileparts share the last position
+     */
+    public int getRank(String filepart) {
+        Integer rank = ranks.get(filepart);
+        return rank == null ? unknownRank : rank;
+    }
+
+    /**
+     * @return comparator sorting structure matches by rank, filepart and group number, so the groups of an unknown filepart stay together
+     */
+    public Comparator<StructureMatch> comparator() {
+        return Comparator.comparingInt((StructureMatch match) -> getRank(match.getFilepart()))
+                .thenComparing(StructureMatch::getFilepart)
+                .thenComparingInt(match -> match.getGroupNumber().isEmpty() ? -1 : Integer.parseInt(match.getGroupNumber()));
+    }
+
+    /**
+     * Order the docstructs and insert the text block at its configured position
+     *
+     * @param matches one structure match per docstruct
+     * @return the matches sorted by {@link #comparator()}, null marks the position of the text block
+     */
+    public List<StructureMatch> arrange(Collection<StructureMatch> matches) {
+        List<StructureMatch> ordered = new ArrayList<>(matches);
+        ordered.sort(comparator());
+        int textblock = 0;
+        while (textblock < ordered.size() && getRank(ordered.get(textblock).getFilepart()) <= textblockRank) {
+            textblock++;
+        }
+        ordered.add(textblock, null);
+        return ordered;
+    }
+}
@@ -0,0 +1,254 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import de.intranda.goobi.plugins.StructureRuleMatcher.StructureMatch;
+import lombok.Getter;
+
+/**
+ * Result of an analysis that does not touch the METS file: hits per rule, unmatched images and the planned order of pages and docstructs. The
+ * order is planned the same way as by the {@link PaginationBuilder}, but without a ruleset.
+ */
+@Getter
+public class DryRunReport {
+
+    /** name of the docstruct containing the paginated pages, if the images are ordered by docstruct */
+    public static final String TEXTBLOCK = "Textblock";
+
+    /** folder or listing file the image names were read from */
+    private final String source;
+
+    private final int imageCount;
+
+    private final Map<String, Integer> ruleHits = new TreeMap<>();
+
+    private final List<String> unmatchedImages = new ArrayList<>();
+
+    private final List<PlannedDocstruct> docstructs = new ArrayList<>();
+
+    private final List<PlannedPage> pages = new ArrayList<>();
+
+    /**
+     * Plan the structure of the classified images
+     *
+     * @param source folder or listing file the image names were read from
+     * @param configuration the plugin configuration
+     * @param classifications the classified images in folder order
+     */
+    public DryRunReport(String source, AnalyzerConfiguration configuration, ImageClassification[] classifications) {
+        this.source = source;
+        this.imageCount = classifications.length;
+
+        // pages of each docstruct in folder order, the key distinguishes VS1 and VS2
+        Map<String, List<ImageClassification>> groups = new LinkedHashMap<>();
+        Map<String, StructureMatch> matches = new LinkedHashMap<>();
+        Map<String, Integer> firstPages = new LinkedHashMap<>();
+        List<ImageClassification> textblock = new ArrayList<>();
+        for (int index = 0; index < classifications.length; index++) {
+            ImageClassification classification = classifications[index];
+            StructureMatch structureMatch = classification.getStructureMatch();
+            if (classification.isUnmatched()) {
+                unmatchedImages.add(classification.getImageName());
+            } else {
+                ruleHits.merge(classification.getRuleName(), 1, Integer::sum);
+            }
+            if (structureMatch != null) {
+                groups.computeIfAbsent(structureMatch.getKey(), k -> new ArrayList<>()).add(classification);
+                matches.putIfAbsent(structureMatch.getKey(), structureMatch);
+                firstPages.putIfAbsent(structureMatch.getKey(), index + 1);
+            } else {
+                textblock.add(classification);
+            }
+        }
+
+        if (configuration.isOrderImagesByDocstruct()) {
+            for (StructureMatch structureMatch : configuration.getDocstructOrder().arrange(matches.values())) {
+                if (structureMatch == null) {
+                    addDocstruct(TEXTBLOCK, textblock);
+                } else {
+                    addDocstruct(structureMatch.getDocstruct(), groups.get(structureMatch.getKey()));
+                }
+            }
+        } else {
+            for (ImageClassification classification : classifications) {
+                StructureMatch structureMatch = classification.getStructureMatch();
+                pages.add(new PlannedPage(pages.size() + 1, classification, structureMatch == null ? null : structureMatch.getDocstruct()));
+            }
+            for (Map.Entry<String, StructureMatch> entry : matches.entrySet()) {
+                docstructs.add(new PlannedDocstruct(entry.getValue().getDocstruct(), firstPages.get(entry.getKey()),
+                        groups.get(entry.getKey()).size()));
+            }
+        }
+    }
+
+    private void addDocstruct(String docstruct, List<ImageClassification> group) {
+        docstructs.add(new PlannedDocstruct(docstruct, pages.size() + 1, group.size()));
+        for (ImageClassification classification : group) {
+            pages.add(new PlannedPage(pages.size() + 1, classification, docstruct));
+        }
+    }
+
+    public int getUnmatchedCount() {
+        return unmatchedImages.size();
+    }
+
+    /**
+     * Write the report as CSV. Each line starts with its record type: rule, unmatched, docstruct or page.
+     *
+     * @param writer target of the report
+     * @throws IOException if the report cannot be written
+     */
+    public void writeCsv(Writer writer) throws IOException {
+        writer.write("# source: " + source + ", images: " + imageCount + ", unmatched: " + getUnmatchedCount() + "\n");
+        for (Map.Entry<String, Integer> rule : ruleHits.entrySet()) {
+            writeCsvLine(writer, "rule", rule.getKey(), String.valueOf(rule.getValue()));
+        }
+        for (String imageName : unmatchedImages) {
+            writeCsvLine(writer, "unmatched", imageName);
+        }
+        for (PlannedDocstruct docstruct : docstructs) {
+            writeCsvLine(writer, "docstruct", docstruct.getDocstruct(), String.valueOf(docstruct.getFirstPage()),
+                    String.valueOf(docstruct.getPageCount()));
+        }
+        for (PlannedPage page : pages) {
+            writeCsvLine(writer, "page", String.valueOf(page.getPhysPageNumber()), page.getImageName(), page.getLogicalPageNumber(),
+                    page.getDocstruct() == null ? "" : page.getDocstruct());
+        }
+    }
+
+    /**
+     * Write a single CSV line with the summary of the report: source, images, unmatched images and the hits per rule
+     *
+     * @param writer target of the summary
+     * @throws IOException if the summary cannot be written
+     */
+    public void writeCsvSummary(Writer writer) throws IOException {
+        StringBuilder hits = new StringBuilder();
+        for (Map.Entry<String, Integer> rule : ruleHits.entrySet()) {
+            if (hits.length() > 0) {
+                hits.append(' ');
+            }
+            hits.append(rule.getKey()).append('=').append(rule.getValue());
+        }
+        writeCsvLine(writer, source, String.valueOf(imageCount), String.valueOf(getUnmatchedCount()), hits.toString());
+    }
+
+    /**
+     * Write the report as JSON object
+     *
+     * @param writer target of the report
+     * @param includePages false to omit the planned pages, e.g. when scanning many folders
+     * @throws IOException if the report cannot be written
+     */
+    public void writeJson(Writer writer, boolean includePages) throws IOException {
+        writer.write("{\"source\":" + quoteJson(source) + ",\"images\":" + imageCount + ",\"unmatchedCount\":" + getUnmatchedCount());
+        writer.write(",\"ruleHits\":{");
+        String separator = "";
+        for (Map.Entry<String, Integer> rule : ruleHits.entrySet()) {
+            writer.write(separator + quoteJson(rule.getKey()) + ":" + rule.getValue());
+            separator = ",";
+        }
+        writer.write("},\"unmatched\":[");
+        separator = "";
+        for (String imageName : unmatchedImages) {
+            writer.write(separator + quoteJson(imageName));
+            separator = ",";
+        }
+        writer.write("],\"docstructs\":[");
+        separator = "";
+        for (PlannedDocstruct docstruct : docstructs) {
+            writer.write(separator + "{\"docstruct\":" + quoteJson(docstruct.getDocstruct()) + ",\"firstPage\":" + docstruct.getFirstPage()
+                    + ",\"pages\":" + docstruct.getPageCount() + "}");
+            separator = ",";
+        }
+        writer.write("]");
+        if (includePages) {
+            writer.write(",\"pages\":[");
+            separator = "";
+            for (PlannedPage page : pages) {
+                writer.write(separator + "{\"physPageNumber\":" + page.getPhysPageNumber() + ",\"image\":" + quoteJson(page.getImageName())
+                        + ",\"logicalPageNumber\":" + quoteJson(page.getLogicalPageNumber()) + ",\"docstruct\":" + quoteJson(page.getDocstruct())
+                        + "}");
+                separator = ",\n";
+            }
+            writer.write("]");
+        }
+        writer.write("}");
+    }
+
+    private static void writeCsvLine(Writer writer, String... values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            String value = values[i];
+            if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 || value.indexOf('\n') >= 0) {
+                writer.write('"' + value.replace("\"", "\"\"") + '"');
+            } else {
+                writer.write(value);
+            }
+        }
+        writer.write('\n');
+    }
+
+    private static String quoteJson(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * @return the summary of the report
+     */
+    @Override
+    public String toString() {
+        return source + ": " + imageCount + " images, " + getUnmatchedCount() + " unmatched, rule hits " + ruleHits;
+    }
+
+    @Getter
+    public static class PlannedPage {
+        private final int physPageNumber;
+        private final String imageName;
+        private final String logicalPageNumber;
+        /** docstruct the page belongs to, null for pages of the main element */
+        private final String docstruct;
+
+        public PlannedPage(int physPageNumber, ImageClassification classification, String docstruct) {
+            this.physPageNumber = physPageNumber;
+            this.imageName = classification.getImageName();
+            this.logicalPageNumber = classification.getLogicalPageNumber();
+            this.docstruct = docstruct;
+        }
+    }
+
+    @Getter
+    public static class PlannedDocstruct {
+        private final String docstruct;
+        private final int firstPage;
+        private final int pageCount;
+
+        public PlannedDocstruct(String docstruct, int firstPage, int pageCount) {
+            this.docstruct = docstruct;
+            this.firstPage = firstPage;
+            this.pageCount = pageCount;
+        }
+    }
+}
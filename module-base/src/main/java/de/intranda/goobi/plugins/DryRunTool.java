@@ -0,0 +1,206 @@
+package de.intranda.goobi.plugins;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.XMLConfiguration;
+
+/**
+ * Command line tool for a dry run of the image name analysis. It reads image names from folders or listing files, classifies them with a plugin
+ * configuration and prints the report without a Goobi instance and without touching any METS file.
+ *
+ * <pre>
+ * java -cp plugin.jar:libs/* de.intranda.goobi.plugins.DryRunTool -c plugin_intranda_step_imagename_analyse.xml [-f csv|json] [-o file] [-r] path...
+ * </pre>
+ *
+ * A path is either an image folder or a text file with one image name per line. With <code>-r</code>, all folders below the given paths are
+ * analysed and a single summary line per folder is written.
+ */
+public class DryRunTool {
+
+    private static final String USAGE = "usage: DryRunTool -c <plugin configuration> [-f csv|json] [-o <output file>] [-r] <folder or listing file>...";
+
+    private final AnalyzerConfiguration configuration;
+
+    private final ImageClassifier classifier;
+
+    private final boolean json;
+
+    private final boolean recursive;
+
+    private final Writer writer;
+
+    private boolean firstReport = true;
+
+    public DryRunTool(AnalyzerConfiguration configuration, boolean json, boolean recursive, Writer writer) {
+        this.configuration = configuration;
+        this.classifier = new ImageClassifier(configuration);
+        this.json = json;
+        this.recursive = recursive;
+        this.writer = writer;
+    }
+
+    public static void main(String[] args) throws IOException {
+        String configFile = null;
+        String outputFile = null;
+        String format = "csv";
+        boolean recursive = false;
+        List<Path> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-c":
+                    configFile = i + 1 < args.length ? args[++i] : null;
+                    break;
+                case "-o":
+                    outputFile = i + 1 < args.length ? args[++i] : null;
+                    break;
+                case "-f":
+                    format = i + 1 < args.length ? args[++i] : null;
+                    break;
+                case "-r":
+                    recursive = true;
+                    break;
+                default:
+                    paths.add(Paths.get(args[i]));
+            }
+        }
+        if (configFile == null || paths.isEmpty() || !"csv".equalsIgnoreCase(format) && !"json".equalsIgnoreCase(format)) {
+            System.err.println(USAGE);
+            System.exit(2);
+        }
+
+        AnalyzerConfiguration configuration;
+        try {
+            configuration = new AnalyzerConfiguration(new XMLConfiguration(configFile), "");
+        } catch (ConfigurationException e) {
+            System.err.println("Cannot read configuration " + configFile + ": " + e.getMessage());
+            System.exit(2);
+            return;
+        }
+
+        try (Writer writer = outputFile == null ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+                : Files.newBufferedWriter(Paths.get(outputFile), StandardCharsets.UTF_8)) {
+            new DryRunTool(configuration, "json".equalsIgnoreCase(format), recursive, writer).run(paths);
+        }
+    }
+
+    /**
+     * Analyse the given folders or listing files and write the reports
+     *
+     * @param paths image folders or text files with one image name per line
+     * @throws IOException if a path cannot be read or the report cannot be written
+     */
+    public void run(List<Path> paths) throws IOException {
+        if (json) {
+            writer.write(recursive || paths.size() > 1 ? "[\n" : "");
+        } else if (recursive) {
+            writer.write("folder,images,unmatched,ruleHits\n");
+        }
+        for (Path path : paths) {
+            if (recursive && Files.isDirectory(path)) {
+                scanTree(path);
+            } else if (Files.isDirectory(path)) {
+                write(analyse(path.toString(), ImageFolderIndex.read(path, configuration.getListingExtensions(), configuration.isNaturalSort())));
+            } else {
+                write(analyse(path.toString(), readListing(path)));
+            }
+        }
+        if (json) {
+            writer.write(recursive || paths.size() > 1 ? "\n]\n" : "\n");
+        }
+        writer.flush();
+    }
+
+    /**
+     * Analyse the given image names
+     *
+     * @param source folder or listing file the names were read from
+     * @param imageNames the image names in folder order
+     * @return the report
+     */
+    public DryRunReport analyse(String source, List<String> imageNames) {
+        return new DryRunReport(source, configuration, classifier.classifyAll(imageNames));
+    }
+
+    /**
+     * Walk the tree once and analyse the files of each folder, when the folder is left
+     */
+    private void scanTree(Path root) throws IOException {
+        Deque<List<String>> folders = new ArrayDeque<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                folders.push(new ArrayList<>());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                String name = file.getFileName().toString();
+                if (attrs.isRegularFile() && ImageFolderIndex.accept(name, configuration.getListingExtensions())) {
+                    folders.peek().add(name);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                System.err.println("Cannot read " + file + ": " + e.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                List<String> names = folders.pop();
+                if (!names.isEmpty()) {
+                    write(analyse(dir.toString(), ImageFolderIndex.of(names.toArray(new String[names.size()]), configuration.isNaturalSort())));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void write(DryRunReport report) throws IOException {
+        if (json) {
+            if (!firstReport) {
+                writer.write(",\n");
+            }
+            report.writeJson(writer, !recursive);
+        } else if (recursive) {
+            report.writeCsvSummary(writer);
+        } else {
+            report.writeCsv(writer);
+        }
+        firstReport = false;
+    }
+
+    /**
+     * Read a listing file with one image name per line, empty lines and path prefixes are ignored. The names are sorted like a folder listing.
+     */
+    private List<String> readListing(Path file) throws IOException {
+        List<String> names = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String name = line.trim();
+            name = name.substring(name.lastIndexOf('/') + 1);
+            if (!name.isEmpty() && ImageFolderIndex.accept(name, configuration.getListingExtensions())) {
+                names.add(name);
+            }
+        }
+        return ImageFolderIndex.of(names.toArray(new String[names.size()]), configuration.isNaturalSort());
+    }
+}
@@ -0,0 +1,225 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import de.intranda.goobi.plugins.StructureRuleMatcher.StructureMatch;
+import lombok.Getter;
+
+/**
+ * Compares the master folder with its derivative folders, e.g. media or jpeg. The derivative folders are listed and classified in the background
+ * while the master folder is analysed. Each derivative folder must contain the same base names as the master folder, in the same order and with
+ * the same classification. If the analysis ends before the comparison, {@link #cancel()} stops the background work.
+ */
+public class FolderCrossCheck {
+
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "imagename-crosscheck-" + THREAD_COUNTER.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ImageClassifier classifier;
+
+    private final ImageFolderSource folderSource;
+
+    /** shared by the classifications of all derivative folders, only used to stop them */
+    private final AnalysisProgress progress = new AnalysisProgress();
+
+    private final Map<String, Future<ImageClassification[]>> derivatives = new LinkedHashMap<>();
+
+    public FolderCrossCheck(AnalyzerConfiguration configuration, ImageFolderSource folderSource) {
+        this.classifier = new ImageClassifier(configuration);
+        this.folderSource = folderSource;
+    }
+
+    /**
+     * Start listing and classifying a derivative folder in the background
+     *
+     * @param name name of the folder in the configuration, used in the result
+     * @param foldername the derivative folder
+     */
+    public void add(String name, String foldername) {
+        derivatives.put(name, EXECUTOR.submit(() -> classifier.classifyAll(folderSource.list(foldername), progress)));
+    }
+
+    /**
+     * Stop listing and classifying the derivative folders, e.g. because the analysis ended early. Has no effect on finished folders.
+     */
+    public void cancel() {
+        progress.cancel();
+        for (Future<ImageClassification[]> derivative : derivatives.values()) {
+            derivative.cancel(true);
+        }
+    }
+
+    /**
+     * Wait for all derivative folders and compare them with the master folder
+     *
+     * @param masterClassifications the classified images of the master folder in folder order
+     * @return the differences of all derivative folders
+     */
+    public CrossCheckResult compare(ImageClassification[] masterClassifications) {
+        Map<String, Integer> masterIndex = new HashMap<>();
+        for (int i = 0; i < masterClassifications.length; i++) {
+            masterIndex.putIfAbsent(getBaseName(masterClassifications[i].getImageName()), i);
+        }
+
+        List<FolderResult> results = new ArrayList<>();
+        for (Map.Entry<String, Future<ImageClassification[]>> derivative : derivatives.entrySet()) {
+            FolderResult result = new FolderResult(derivative.getKey());
+            results.add(result);
+            ImageClassification[] classifications;
+            try {
+                classifications = derivative.getValue().get();
+            } catch (ExecutionException e) {
+                result.error = String.valueOf(e.getCause());
+                continue;
+            } catch (CancellationException e) {
+                result.error = "cancelled";
+                continue;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                result.error = "interrupted";
+                continue;
+            }
+
+            boolean[] found = new boolean[masterClassifications.length];
+            int lastIndex = -1;
+            for (ImageClassification classification : classifications) {
+                Integer index = masterIndex.get(getBaseName(classification.getImageName()));
+                if (index == null || found[index]) {
+                    result.extraImages.add(classification.getImageName());
+                    continue;
+                }
+                found[index] = true;
+                if (index < lastIndex && result.orderDifference == null) {
+                    result.orderDifference = classification.getImageName() + " after " + masterClassifications[lastIndex].getImageName();
+                }
+                lastIndex = Math.max(lastIndex, index);
+                if (!getClassificationKey(classification).equals(getClassificationKey(masterClassifications[index]))) {
+                    result.classificationDifferences.add(classification.getImageName());
+                }
+            }
+            for (int i = 0; i < found.length; i++) {
+                if (!found[i]) {
+                    result.missingImages.add(masterClassifications[i].getImageName());
+                }
+            }
+        }
+        return new CrossCheckResult(results);
+    }
+
+    private static String getBaseName(String imageName) {
+        int dot = imageName.lastIndexOf('.');
+        return dot > 0 ? imageName.substring(0, dot) : imageName;
+    }
+
+    /**
+     * The key compares the classification of a derivative with its master image. The default rules ignore the extension, so the keys only differ
+     * if the paginationRegex or a structure rule depends on it, e.g. <code>.*_(\d+[rv])\.tif</code>. The check guards against such rules, which
+     * would paginate the derivatives differently.
+     */
+    private static String getClassificationKey(ImageClassification classification) {
+        if (classification.getPagination() != null) {
+            return "P" + classification.getPagination();
+        }
+        StructureMatch structureMatch = classification.getStructureMatch();
+        return structureMatch == null ? "U" : "S" + structureMatch.getKey();
+    }
+
+    @Getter
+    public static class CrossCheckResult {
+        private final List<FolderResult> folders;
+
+        public CrossCheckResult(List<FolderResult> folders) {
+            this.folders = folders;
+        }
+
+        /**
+         * @return true if all derivative folders match the master folder
+         */
+        public boolean isConsistent() {
+            for (FolderResult folder : folders) {
+                if (!folder.isConsistent()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Describe the differences of all folders in a single message
+         *
+         * @param maxNames maximum number of image names listed per difference
+         * @return the message
+         */
+        public String getMessage(int maxNames) {
+            StringBuilder message = new StringBuilder("image folders do not match the master folder:");
+            for (FolderResult folder : folders) {
+                if (folder.isConsistent()) {
+                    continue;
+                }
+                message.append(' ').append(folder.getFolder()).append(':');
+                if (folder.getError() != null) {
+                    message.append(" cannot be listed (").append(folder.getError()).append(");");
+                    continue;
+                }
+                appendNames(message, "missing", folder.getMissingImages(), maxNames);
+                appendNames(message, "not in master", folder.getExtraImages(), maxNames);
+                appendNames(message, "different classification", folder.getClassificationDifferences(), maxNames);
+                if (folder.getOrderDifference() != null) {
+                    message.append(" different order at ").append(folder.getOrderDifference()).append(';');
+                }
+            }
+            return message.toString();
+        }
+
+        private static void appendNames(StringBuilder message, String label, List<String> names, int maxNames) {
+            if (names.isEmpty()) {
+                return;
+            }
+            int listed = Math.min(names.size(), maxNames);
+            message.append(' ').append(names.size()).append(' ').append(label).append(" (");
+            message.append(String.join(", ", names.subList(0, listed)));
+            if (listed < names.size()) {
+                message.append(", ...");
+            }
+            message.append(");");
+        }
+    }
+
+    @Getter
+    public static class FolderResult {
+        private final String folder;
+        /** reason why the folder could not be listed */
+        private String error;
+        /** images of the master folder without derivative */
+        private final List<String> missingImages = new ArrayList<>();
+        /** derivatives without image in the master folder */
+        private final List<String> extraImages = new ArrayList<>();
+        /** derivatives classified differently than their master image */
+        private final List<String> classificationDifferences = new ArrayList<>();
+        /** first derivative found at a different position than its master image */
+        private String orderDifference;
+
+        public FolderResult(String folder) {
+            this.folder = folder;
+        }
+
+        public boolean isConsistent() {
+            return error == null && missingImages.isEmpty() && extraImages.isEmpty() && classificationDifferences.isEmpty() && orderDifference == null;
+        }
+    }
+}
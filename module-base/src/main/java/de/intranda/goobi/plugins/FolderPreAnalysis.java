@@ -0,0 +1,98 @@
+package de.intranda.goobi.plugins;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import lombok.Getter;
+
+/**
+ * Partial classification of an image folder that is still being filled. Names are classified as soon as they are reported, so the analysis step
+ * only has to classify the names that arrived after the last update.
+ */
+public class FolderPreAnalysis {
+
+    @Getter
+    private final String folder;
+
+    /** hash of the classification settings the names were classified with */
+    @Getter
+    private final String classificationHash;
+
+    private final ImageClassifier classifier;
+
+    private final Map<String, ImageClassification> classifications = new ConcurrentHashMap<>();
+
+    @Getter
+    private volatile long lastUpdate = System.currentTimeMillis();
+
+    public FolderPreAnalysis(String folder, AnalyzerConfiguration configuration) {
+        this.folder = folder;
+        this.classificationHash = configuration.getClassificationHash();
+        this.classifier = new ImageClassifier(configuration);
+    }
+
+    /**
+     * Classify a new image name
+     *
+     * @param imageName name of the new file
+     */
+    public void add(String imageName) {
+        classifications.computeIfAbsent(imageName, classifier::classify);
+        lastUpdate = System.currentTimeMillis();
+    }
+
+    /**
+     * Forget a removed image name
+     *
+     * @param imageName name of the removed file
+     */
+    public void remove(String imageName) {
+        classifications.remove(imageName);
+        lastUpdate = System.currentTimeMillis();
+    }
+
+    /**
+     * Align the classified names with a complete folder listing, new names are classified and missing names are removed
+     *
+     * @param imageNames the current content of the folder
+     */
+    public void synchronize(Collection<String> imageNames) {
+        Set<String> current = new HashSet<>(imageNames);
+        if (classifications.keySet().retainAll(current)) {
+            lastUpdate = System.currentTimeMillis();
+        }
+        for (String imageName : current) {
+            if (!classifications.containsKey(imageName)) {
+                add(imageName);
+            }
+        }
+    }
+
+    /**
+     * @return number of names classified so far
+     */
+    public int size() {
+        return classifications.size();
+    }
+
+    /**
+     * Get the classification of the final folder listing. Names that were not reported yet are classified now, names that are no longer part of
+     * the listing are ignored.
+     *
+     * @param imageNames the final image names in folder order
+     * @return the classifications in the same order
+     */
+    public ImageClassification[] complete(List<String> imageNames) {
+        ImageClassification[] result = new ImageClassification[imageNames.size()];
+        for (int i = 0; i < result.length; i++) {
+            String imageName = imageNames.get(i);
+            ImageClassification classification = classifications.get(imageName);
+            result[i] = classification != null ? classification : classifier.classify(imageName);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,41 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.goobi.beans.Process;
+
+import de.sub.goobi.helper.exceptions.SwapException;
+import ugh.dl.Fileformat;
+import ugh.dl.Prefs;
+import ugh.exceptions.PreferencesException;
+import ugh.exceptions.ReadException;
+import ugh.exceptions.WriteException;
+
+/**
+ * Reads and writes the metadata file within the process folder of Goobi
+ */
+public class GoobiMetadataStore implements MetadataStore {
+
+    @Override
+    public Prefs getPreferences(Process process) {
+        return process.getRegelsatz().getPreferences();
+    }
+
+    @Override
+    public boolean containsPages(Process process) throws IOException, SwapException, XMLStreamException {
+        return MetsPaginationProbe.containsPages(Paths.get(process.getMetadataFilePath()));
+    }
+
+    @Override
+    public Fileformat read(Process process) throws ReadException, PreferencesException, IOException, SwapException {
+        return process.readMetadataFile();
+    }
+
+    @Override
+    public void write(Process process, Fileformat fileformat) throws WriteException, PreferencesException, IOException, SwapException {
+        process.writeMetadataFile(fileformat);
+    }
+}
@@ -0,0 +1,31 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.goobi.beans.Process;
+
+import de.sub.goobi.helper.exceptions.DAOException;
+import de.sub.goobi.helper.exceptions.SwapException;
+
+/**
+ * Resolves the folders of a process with the folder configuration of Goobi
+ */
+public class GoobiProcessFolders implements ProcessFolders {
+
+    @Override
+    public String getImageFolder(Process process) throws IOException, SwapException, DAOException {
+        return process.getImagesOrigDirectory(false);
+    }
+
+    @Override
+    public String getDerivativeFolder(Process process, String name) throws IOException, SwapException, DAOException {
+        return process.getConfiguredImageFolder(name);
+    }
+
+    @Override
+    public Path getDataFolder(Process process) throws IOException, SwapException {
+        return Paths.get(process.getProcessDataDirectory());
+    }
+}
@@ -0,0 +1,19 @@
+package de.intranda.goobi.plugins;
+
+import org.goobi.beans.Process;
+import org.goobi.production.enums.LogType;
+
+import de.sub.goobi.helper.Helper;
+
+/**
+ * Writes the messages into the journal of the Goobi process
+ */
+public class GoobiProcessJournal implements ProcessJournal {
+
+    private static final String SENDER = "Image analyzer";
+
+    @Override
+    public void addMessage(Process process, LogType type, String message) {
+        Helper.addMessageToProcessJournal(process.getId(), type, message, SENDER);
+    }
+}
@@ -0,0 +1,51 @@
+package de.intranda.goobi.plugins;
+
+import de.intranda.goobi.plugins.StructureRuleMatcher.StructureMatch;
+import lombok.Getter;
+
+/**
+ * Immutable result of the classification of a single image name. An image either has a pagination, belongs to a structure rule or is unmatched.
+ */
+@Getter
+public class ImageClassification {
+
+    public static final String UNCOUNTED = "uncounted";
+
+    private final String imageName;
+
+    /** pagination extracted by the paginationRegex, null if the name did not match */
+    private final String pagination;
+
+    /** matching structure rule, null if the name has a pagination or matched no rule */
+    private final StructureMatch structureMatch;
+
+    public ImageClassification(String imageName, String pagination, StructureMatch structureMatch) {
+        this.imageName = imageName;
+        this.pagination = pagination;
+        this.structureMatch = structureMatch;
+    }
+
+    public boolean isUnmatched() {
+        return pagination == null && structureMatch == null;
+    }
+
+    /**
+     * @return the value for the logical page number: the pagination, the filepart of the structure rule or uncounted
+     */
+    public String getLogicalPageNumber() {
+        if (pagination != null) {
+            return pagination;
+        }
+        return structureMatch != null ? structureMatch.getFilepart() : UNCOUNTED;
+    }
+
+    /**
+     * @return the rule name used in the metrics
+     */
+    public String getRuleName() {
+        if (pagination != null) {
+            return AnalysisMetrics.PAGINATION_RULE;
+        }
+        return structureMatch != null ? structureMatch.getFilepart() : null;
+    }
+}
@@ -0,0 +1,80 @@
+package de.intranda.goobi.plugins;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Classifies image names by the pagination regex and the structure rules. The classification of a name does not depend on other names, so large
+ * folders are classified in parallel on the common fork-join pool.
+ */
+public class ImageClassifier {
+
+    /** number of names classified as one task of a parallel classification */
+    private static final int CHUNK_SIZE = 256;
+
+    private final PaginationMatcher paginationMatcher;
+
+    private final StructureRuleMatcher structureRuleMatcher;
+
+    private final int parallelThreshold;
+
+    public ImageClassifier(AnalyzerConfiguration configuration) {
+        this(configuration.getPaginationMatcher(), configuration.getStructureRuleMatcher(), configuration.getParallelClassificationThreshold());
+    }
+
+    public ImageClassifier(PaginationMatcher paginationMatcher, StructureRuleMatcher structureRuleMatcher, int parallelThreshold) {
+        this.paginationMatcher = paginationMatcher;
+        this.structureRuleMatcher = structureRuleMatcher;
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Classify a single image name
+     *
+     * @param imageName name of the image file
+     * @return the classification
+     */
+    public ImageClassification classify(String imageName) {
+        String pagination = paginationMatcher.match(imageName);
+        if (pagination != null) {
+            return new ImageClassification(imageName, pagination, null);
+        }
+        return new ImageClassification(imageName, null, structureRuleMatcher.match(imageName));
+    }
+
+    /**
+     * Classify all image names. Lists with at least parallelClassificationThreshold names are classified in parallel
+     *
+     * @param imageNames the image names in folder order
+     * @return the classifications in the same order
+     */
+    public ImageClassification[] classifyAll(List<String> imageNames) {
+        return classifyAll(imageNames, new AnalysisProgress());
+    }
+
+    /**
+     * Classify all image names and report each classified name to the given progress
+     *
+     * @param imageNames the image names in folder order
+     * @param progress progress of the analysis, the classification stops if it gets cancelled
+     * @return the classifications in the same order
+     */
+    public ImageClassification[] classifyAll(List<String> imageNames, AnalysisProgress progress) {
+        ImageClassification[] result = new ImageClassification[imageNames.size()];
+        progress.startPhase(AnalysisMetrics.PHASE_CLASSIFICATION, result.length);
+        // the progress is updated once per chunk, not per image
+        IntStream chunks = IntStream.range(0, (result.length + CHUNK_SIZE - 1) / CHUNK_SIZE);
+        if (parallelThreshold > 0 && result.length >= parallelThreshold) {
+            chunks = chunks.parallel();
+        }
+        chunks.forEach(chunk -> {
+            int start = chunk * CHUNK_SIZE;
+            int end = Math.min(result.length, start + CHUNK_SIZE);
+            for (int i = start; i < end; i++) {
+                result[i] = classify(imageNames.get(i));
+            }
+            progress.advance(end - start);
+        });
+        return result;
+    }
+}
@@ -0,0 +1,140 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * Sorted, immutable list of the image names of a folder. The names are read from a {@link DirectoryStream} without keeping the paths and are
+ * stored in a single array of the exact size.
+ */
+public class ImageFolderIndex extends AbstractList<String> implements RandomAccess {
+
+    /** orders digit sequences by their numeric value, e.g. img_2 before img_10 */
+    public static final Comparator<String> NATURAL_ORDER = ImageFolderIndex::compareNatural;
+
+    private final String[] names;
+
+    private ImageFolderIndex(String[] names) {
+        this.names = names;
+    }
+
+    /**
+     * Read the image names of a folder
+     *
+     * @param folder the image folder
+     * @param extensions lower case file extensions to include, an empty set includes all files
+     * @param naturalSort true to order numbers within the names by their value, false to order the names alphabetically
+     * @return the sorted names
+     * @throws IOException if the folder cannot be read
+     */
+    public static ImageFolderIndex read(Path folder, Set<String> extensions, boolean naturalSort) throws IOException {
+        String[] names = new String[64];
+        int size = 0;
+        // like the storage provider, only regular files are listed, not subfolders such as backups or thumbnails
+        try (DirectoryStream<Path> stream =
+                Files.newDirectoryStream(folder, entry -> accept(entry.getFileName().toString(), extensions) && Files.isRegularFile(entry))) {
+            for (Path entry : stream) {
+                if (size == names.length) {
+                    names = Arrays.copyOf(names, size * 2);
+                }
+                names[size++] = entry.getFileName().toString();
+            }
+        }
+        return of(Arrays.copyOf(names, size), naturalSort);
+    }
+
+    /**
+     * Create an index of names that were listed in another way
+     *
+     * @param names the image names, the array is sorted in place
+     * @param naturalSort true to order numbers within the names by their value, false to order the names alphabetically
+     * @return the sorted names
+     */
+    public static ImageFolderIndex of(String[] names, boolean naturalSort) {
+        Comparator<String> comparator = naturalSort ? NATURAL_ORDER : Comparator.naturalOrder();
+        Arrays.sort(names, comparator);
+        return new ImageFolderIndex(names);
+    }
+
+    /**
+     * @param imageName name of a file
+     * @param extensions lower case file extensions to include, an empty set includes all files
+     * @return true if the file is no hidden file and has one of the extensions
+     */
+    public static boolean accept(String imageName, Set<String> extensions) {
+        if (imageName.startsWith(".")) {
+            return false;
+        }
+        if (extensions.isEmpty()) {
+            return true;
+        }
+        int dot = imageName.lastIndexOf('.');
+        return dot > 0 && extensions.contains(imageName.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    @Override
+    public String get(int index) {
+        return names[index];
+    }
+
+    @Override
+    public int size() {
+        return names.length;
+    }
+
+    private static int compareNatural(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            char ca = a.charAt(i);
+            char cb = b.charAt(j);
+            if (Character.isDigit(ca) && Character.isDigit(cb)) {
+                // skip leading zeros, then the longer number is the larger one
+                int startA = i;
+                int startB = j;
+                while (startA < a.length() - 1 && a.charAt(startA) == '0' && Character.isDigit(a.charAt(startA + 1))) {
+                    startA++;
+                }
+                while (startB < b.length() - 1 && b.charAt(startB) == '0' && Character.isDigit(b.charAt(startB + 1))) {
+                    startB++;
+                }
+                int endA = startA;
+                int endB = startB;
+                while (endA < a.length() && Character.isDigit(a.charAt(endA))) {
+                    endA++;
+                }
+                while (endB < b.length() && Character.isDigit(b.charAt(endB))) {
+                    endB++;
+                }
+                int result = Integer.compare(endA - startA, endB - startB);
+                for (int k = 0; result == 0 && k < endA - startA; k++) {
+                    result = Character.compare(a.charAt(startA + k), b.charAt(startB + k));
+                }
+                if (result != 0) {
+                    return result;
+                }
+                i = endA;
+                j = endB;
+            } else {
+                if (ca != cb) {
+                    return Character.compare(ca, cb);
+                }
+                i++;
+                j++;
+            }
+        }
+        if (i < a.length() || j < b.length()) {
+            return i < a.length() ? 1 : -1;
+        }
+        // equal apart from leading zeros, keep a total order
+        return a.compareTo(b);
+    }
+}
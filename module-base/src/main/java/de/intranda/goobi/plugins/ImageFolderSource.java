@@ -0,0 +1,20 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Lists the images of a folder. The plugin uses the storage provider of Goobi or the streaming listing, other implementations can provide the
+ * names without a file system.
+ */
+public interface ImageFolderSource {
+
+    /**
+     * List the image names of a folder
+     *
+     * @param foldername the image folder
+     * @return the image names in folder order
+     * @throws IOException if the folder cannot be listed
+     */
+    List<String> list(String foldername) throws IOException;
+}
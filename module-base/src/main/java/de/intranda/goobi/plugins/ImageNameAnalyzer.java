@@ -1,17 +1,19 @@
 package de.intranda.goobi.plugins;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import org.apache.commons.configuration.HierarchicalConfiguration;
-import org.apache.commons.configuration.XMLConfiguration;
-import org.apache.commons.configuration.tree.xpath.XPathExpressionEngine;
-import org.apache.commons.lang.SystemUtils;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.commons.lang.StringUtils;
 import org.goobi.beans.Process;
 import org.goobi.beans.Step;
 import org.goobi.production.enums.LogType;
@@ -21,23 +23,20 @@ import org.goobi.production.enums.PluginType;
 import org.goobi.production.enums.StepReturnValue;
 import org.goobi.production.plugin.interfaces.IStepPluginVersion2;
 
-import de.sub.goobi.config.ConfigPlugins;
-import de.sub.goobi.helper.Helper;
+import de.intranda.goobi.plugins.AnalysisProgress.AnalysisCancelledException;
+import de.intranda.goobi.plugins.FolderCrossCheck.CrossCheckResult;
 import de.sub.goobi.helper.StorageProvider;
 import de.sub.goobi.helper.exceptions.DAOException;
 import de.sub.goobi.helper.exceptions.SwapException;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Setter;
 import lombok.extern.log4j.Log4j;
 import net.xeoh.plugins.base.annotations.PluginImplementation;
-import ugh.dl.ContentFile;
 import ugh.dl.DigitalDocument;
 import ugh.dl.DocStruct;
-import ugh.dl.DocStructType;
 import ugh.dl.Fileformat;
-import ugh.dl.Metadata;
-import ugh.dl.MetadataType;
 import ugh.dl.Prefs;
-import ugh.dl.Reference;
 import ugh.exceptions.DocStructHasNoTypeException;
 import ugh.exceptions.MetadataTypeNotAllowedException;
 import ugh.exceptions.PreferencesException;
@@ -53,57 +52,173 @@ public class ImageNameAnalyzer implements IStepPluginVersion2 {
 
     private PluginGuiType pluginGuiType = PluginGuiType.NONE;
 
-    private String title = "intranda_step_imagename_analyse";
+    private static final String UNMATCHED_IMAGES_FILE = "imagename_analyse_unmatched.txt";
+
+    private static final String PLUGIN_TITLE = "intranda_step_imagename_analyse";
+
+    private String title = PLUGIN_TITLE;
 
     private PluginType type = PluginType.Step;
 
     private Step step;
 
-    private Pattern imagePattern;
+    private AnalyzerConfiguration configuration;
+
+    private MetricsSink metricsSink;
+
+    private ImageFolderSource folderSource;
+
+    /** lists the derivative folders of the cross-check, by default like the image folder but without the listingExtensions filter */
+    private ImageFolderSource derivativeFolderSource;
+
+    private MetadataStore metadataStore;
+
+    private ProcessJournal journal;
 
-    private boolean skipWhenDataExists;
+    private ProcessFolders processFolders;
 
-    private Map<String, String> docstructMap;
+    private PreAnalysisWatcher preAnalysisWatcher;
 
-    private boolean orderImagesByDocstruct = false;
+    /** progress of the last started analysis */
+    @Setter(AccessLevel.NONE)
+    private volatile AnalysisProgress progress;
+
+    /** analyses of this instance that are currently running, they are stopped by {@link #cancel()} */
+    private final Set<AnalysisProgress> runningAnalyses = ConcurrentHashMap.newKeySet();
 
     public ImageNameAnalyzer() {
+        this(AnalyzerConfiguration.getInstance(PLUGIN_TITLE), new GoobiMetadataStore(), new GoobiProcessJournal(), new GoobiProcessFolders());
+    }
 
-        XMLConfiguration config = ConfigPlugins.getPluginConfig(title);
-        config.setExpressionEngine(new XPathExpressionEngine());
-        String regexp = config.getString("/paginationRegex");
-        skipWhenDataExists = config.getBoolean("/skipWhenDataExists", false);
-        imagePattern = Pattern.compile(regexp);
+    /**
+     * Create an analyzer with its own configuration and access to the metadata files, journals and folders. The images are listed with the storage
+     * provider and the pre-analysis of Goobi is used, unless another folder source or watcher is set.
+     *
+     * @param configuration the plugin configuration
+     * @param metadataStore access to the metadata files and rulesets
+     * @param journal receives the messages for the process journal
+     * @param processFolders resolves the image folders and the folder for the files written by the plugin
+     */
+    public ImageNameAnalyzer(AnalyzerConfiguration configuration, MetadataStore metadataStore, ProcessJournal journal,
+            ProcessFolders processFolders) {
+        this.configuration = configuration;
+        this.metadataStore = metadataStore;
+        this.journal = journal;
+        this.processFolders = processFolders;
+        preAnalysisWatcher = PreAnalysisWatcher.getInstance();
+        folderSource = foldername -> listImages(foldername, configuration.getListingExtensions());
+        derivativeFolderSource = foldername -> listImages(foldername, Collections.emptySet());
+        metricsSink = createMetricsSink(configuration.getMetricsSink());
+    }
 
-        docstructMap = new HashMap<>();
-        List<HierarchicalConfiguration> itemList = config.configurationsAt("/structureList/item");
-        for (HierarchicalConfiguration item : itemList) {
-            docstructMap.put(item.getString("@filepart"), item.getString("@docstruct"));
+    private static MetricsSink createMetricsSink(String className) {
+        if (StringUtils.isNotBlank(className)) {
+            try {
+                return (MetricsSink) Class.forName(className).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                log.error("Cannot create metrics sink " + className + ", use default sink", e);
+            }
         }
-        orderImagesByDocstruct = config.getBoolean("/orderImagesByDocstruct", false);
+        return DefaultMetricsSink.getInstance();
     }
 
+    /**
+     * Analyse the process of the current step. In one of the configured preAnalysisStep steps, only the pre-analysis of the image folder is
+     * started and the step is finished, the analysis itself runs in a later step.
+     */
     @Override
     public PluginReturnValue run() {
+        if (configuration.getPreAnalysisSteps().contains(step.getTitel())) {
+            startPreAnalysis(step.getProzess());
+            return PluginReturnValue.FINISH;
+        }
+        return run(step.getProzess());
+    }
 
-        Process process = step.getProzess();
-        Prefs prefs = process.getRegelsatz().getPreferences();
+    /**
+     * Analyse the images of the given process and write the pagination into its metadata file
+     *
+     * @param process the process to analyse
+     * @return FINISH if the pagination was written or skipped, ERROR otherwise or if the analysis was cancelled
+     */
+    public PluginReturnValue run(Process process) {
+        AnalysisMetrics metrics = new AnalysisMetrics(process.getId(), process.getTitel());
+        AnalysisProgress currentProgress = new AnalysisProgress();
+        progress = currentProgress;
+        runningAnalyses.add(currentProgress);
+        PluginReturnValue result = PluginReturnValue.ERROR;
+        try {
+            result = analyse(process, metrics, currentProgress);
+            return result;
+        } catch (AnalysisCancelledException e) {
+            log.info(process.getTitel() + ": " + e.getMessage());
+            journal.addMessage(process, LogType.INFO, e.getMessage() + ", the metadata file was not changed");
+            return result;
+        } finally {
+            runningAnalyses.remove(currentProgress);
+            metrics.setResult(result);
+            metrics.finish();
+            metricsSink.publish(metrics);
+        }
+    }
+
+    private PluginReturnValue analyse(Process process, AnalysisMetrics metrics, AnalysisProgress progress) {
+        // without the probe, the decision to skip the process is made after reading the metadata file
+        boolean skipDecided = !configuration.isSkipWhenDataExists();
+        if (configuration.isSkipWhenDataExists()) {
+            // check the existing file without parsing it completely before the folder is listed, the full parse is only needed if the pagination
+            // gets written
+            try {
+                boolean containsPages = metadataStore.containsPages(process);
+                metrics.endPhase(AnalysisMetrics.PHASE_READING);
+                if (containsPages) {
+                    return PluginReturnValue.FINISH;
+                }
+                skipDecided = true;
+            } catch (IOException | SwapException | XMLStreamException e) {
+                log.warn(process.getTitel() + ": cannot check existing pagination, read metadata file instead", e);
+            }
+        }
+
+        // the derivative folders are listed in the background, the listing is stopped whenever the analysis ends before the comparison
+        FolderCrossCheck crossCheck =
+                configuration.getCrossCheckFolders().isEmpty() ? null : new FolderCrossCheck(configuration, derivativeFolderSource);
+        try {
+            return analyse(process, metrics, progress, crossCheck, skipDecided);
+        } finally {
+            if (crossCheck != null) {
+                crossCheck.cancel();
+            }
+        }
+    }
+
+    private PluginReturnValue analyse(Process process, AnalysisMetrics metrics, AnalysisProgress progress, FolderCrossCheck crossCheck,
+            boolean skipDecided) {
         DocStruct physical = null;
         DocStruct logical = null;
         List<String> orderedImageNameList = null;
         Fileformat ff = null;
         DigitalDocument digDoc = null;
+        boolean incremental = false;
 
+        Prefs prefs = metadataStore.getPreferences(process);
         String foldername = null;
         // read image names
         try {
-            foldername = process.getImagesOrigDirectory(false);
-            orderedImageNameList = StorageProvider.getInstance().list(foldername);
+            foldername = processFolders.getImageFolder(process);
+            orderedImageNameList = folderSource.list(foldername);
+            metrics.setImageCount(orderedImageNameList.size());
+            metrics.endPhase(AnalysisMetrics.PHASE_LISTING);
+            progress.startPhase(AnalysisMetrics.PHASE_READING, orderedImageNameList.size());
             if (orderedImageNameList.isEmpty()) {
                 // abort
                 log.info(process.getTitel() + ": no images found");
                 return PluginReturnValue.ERROR;
             }
+            if (crossCheck != null && skipDecided) {
+                // list the derivative folders while the metadata file is read and the master folder is classified
+                startCrossCheck(process, crossCheck);
+            }
         } catch (IOException | SwapException | DAOException e) {
             log.error(e);
             return PluginReturnValue.ERROR;
@@ -111,305 +226,86 @@ public class ImageNameAnalyzer implements IStepPluginVersion2 {
 
         try {
             // read mets file
-            ff = process.readMetadataFile();
+            ff = metadataStore.read(process);
             digDoc = ff.getDigitalDocument();
             logical = digDoc.getLogicalDocStruct();
             if (logical.getType().isAnchor()) {
                 logical = logical.getAllChildren().get(0);
             }
             physical = digDoc.getPhysicalDocStruct();
+            metrics.endPhase(AnalysisMetrics.PHASE_READING);
             // check if pagination was already written
             List<DocStruct> pages = physical.getAllChildren();
             if (pages != null && !pages.isEmpty()) {
-                if (skipWhenDataExists) {
+                if (configuration.isSkipWhenDataExists()) {
                     return PluginReturnValue.FINISH;
                 }
 
-                // process contains data, clear it
-                for (DocStruct page : pages) {
-                    ff.getDigitalDocument().getFileSet().removeFile(page.getAllContentFiles().get(0));
-                    List<Reference> refs = new ArrayList<>(page.getAllFromReferences());
-                    for (ugh.dl.Reference ref : refs) {
-                        ref.getSource().removeReferenceTo(page);
-                    }
-                }
-                while (physical.getAllChildren() != null && !physical.getAllChildren().isEmpty()) {
-                    physical.removeChild(physical.getAllChildren().get(0));
-                }
-                while (logical.getAllChildren() != null && !logical.getAllChildren().isEmpty()) {
-                    logical.removeChild(logical.getAllChildren().get(0));
+                if (configuration.isIncrementalUpdate() && !configuration.isOrderImagesByDocstruct()) {
+                    // keep the existing pages, only add and remove the changed images
+                    incremental = true;
+                } else {
+                    // process contains data, clear it
+                    PaginationBuilder.resetStructureMaps(digDoc, physical, logical);
                 }
             }
+            if (crossCheck != null && !skipDecided) {
+                startCrossCheck(process, crossCheck);
+            }
 
-        } catch (ReadException | PreferencesException | IOException | SwapException e) {
+        } catch (ReadException | PreferencesException | IOException | SwapException | DAOException e) {
             log.error(e);
             return PluginReturnValue.ERROR;
         }
 
-        DocStructType pageType = prefs.getDocStrctTypeByName("page");
-        MetadataType physType = prefs.getMetadataTypeByName("physPageNumber");
-        MetadataType logType = prefs.getMetadataTypeByName("logicalPageNumber");
-        Map<String, DocStruct> docstructs = new HashMap<>();
-        DocStruct text = null;
-        if (orderImagesByDocstruct) {
-            try {
-                text = digDoc.createDocStruct(prefs.getDocStrctTypeByName("Textblock"));
-            } catch (TypeNotAllowedForParentException e1) {
-                log.error(e1);
-                return PluginReturnValue.ERROR;
-            }
+        ImageClassification[] classifications = null;
+        if (!incremental) {
+            classifications = classify(process, foldername, orderedImageNameList, progress);
+            metrics.endPhase(AnalysisMetrics.PHASE_CLASSIFICATION);
         }
-        for (int index = 0; index < orderedImageNameList.size(); index++) {
-            String imageName = orderedImageNameList.get(index);
-            try {
-                DocStruct dsPage = digDoc.createDocStruct(pageType);
-
-                ContentFile cf = new ContentFile();
-                if (SystemUtils.IS_OS_WINDOWS) {
-                    cf.setLocation("file:/" + foldername + imageName);
-                } else {
-                    cf.setLocation("file://" + foldername + imageName);
-                }
-                dsPage.addContentFile(cf);
-
-                physical.addChild(dsPage);
-                Metadata mdLogicalPageNo = new Metadata(logType);
-                dsPage.addMetadata(mdLogicalPageNo);
-                if (!orderImagesByDocstruct) {
-                    Metadata mdPhysPageNo = new Metadata(physType);
-                    mdPhysPageNo.setValue(String.valueOf(index + 1));
-                    dsPage.addMetadata(mdPhysPageNo);
-                    logical.addReferenceTo(dsPage, "logical_physical");
-                }
-
-                // compare image name against regular expression
-                Matcher matcher = imagePattern.matcher(imageName);
-                if (matcher.matches()) {
-                    String pagination = matcher.group(1);
-                    mdLogicalPageNo.setValue(pagination);
-                    if (orderImagesByDocstruct) {
-                        text.addReferenceTo(dsPage, "logical_physical");
-                    }
 
-                } else {
-                    mdLogicalPageNo.setValue("uncounted");
-                    // compare image name against list of known abbreviations
-                    boolean match = false;
-                    for (String filepart : docstructMap.keySet()) {
-                        Pattern p = Pattern.compile(".*_" + filepart + "(\\d?)[rv]?\\.\\w+");
-                        Matcher m = p.matcher(imageName);
-                        if (m.matches()) {
-                            if (m.groupCount() > 0) {
-                                mdLogicalPageNo.setValue(filepart);
-                                String groupNumber = m.group(1);
-                                if (docstructs.containsKey(filepart + groupNumber)) {
-                                    DocStruct ds = docstructs.get(filepart + groupNumber);
-                                    ds.addReferenceTo(dsPage, "logical_physical");
-                                } else {
-                                    DocStructType type = prefs.getDocStrctTypeByName(docstructMap.get(filepart));
-                                    DocStruct ds = digDoc.createDocStruct(type);
-                                    if (!orderImagesByDocstruct) {
-                                        logical.addChild(ds);
-                                    }
-                                    ds.addReferenceTo(dsPage, "logical_physical");
-                                    docstructs.put(filepart + groupNumber, ds);
-                                }
-                            } else {
-                                DocStructType type = prefs.getDocStrctTypeByName(docstructMap.get(filepart));
-
-                                DocStruct ds = digDoc.createDocStruct(type);
-                                if (!orderImagesByDocstruct) {
-                                    logical.addChild(ds);
-                                }
-                                ds.addReferenceTo(dsPage, "logical_physical");
-                                docstructs.put(filepart, ds);
-                            }
-                            match = true;
-                            break;
-                        }
-
-                    }
-
-                    if (!match) {
-                        // no match found, use uncounted, add to process log
-                        Helper.addMessageToProcessJournal(process.getId(), LogType.ERROR, "no match found for image " + imageName, "Image analyzer");
-
-                        log.debug(process.getTitel() + ": no match found for image " + imageName);
-                        if (orderImagesByDocstruct) {
-                            text.addReferenceTo(dsPage, "logical_physical");
-                        }
-                    }
-                }
-
-            } catch (TypeNotAllowedForParentException | TypeNotAllowedAsChildException | MetadataTypeNotAllowedException
-                    | DocStructHasNoTypeException e) {
-                log.error(e);
+        if (crossCheck != null) {
+            // the incremental update classifies only new images, the check needs all of them
+            CrossCheckResult check = crossCheck.compare(
+                    classifications != null ? classifications : new ImageClassifier(configuration).classifyAll(orderedImageNameList, progress));
+            metrics.endPhase(AnalysisMetrics.PHASE_CROSS_CHECK);
+            if (!check.isConsistent()) {
+                String message = check.getMessage(configuration.getMaxUnmatchedImagesInJournal());
+                journal.addMessage(process, LogType.ERROR, message);
+                log.info(process.getTitel() + ": " + message);
                 return PluginReturnValue.ERROR;
             }
         }
-        if (orderImagesByDocstruct) {
-            int index = 1;
-            try {
-                // order docstructs
-                if (docstructs.containsKey("VD")) {
-                    DocStruct ds = docstructs.get("VD");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("VDS")) {
-                    DocStruct ds = docstructs.get("VDS");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("VDS2")) {
-                    DocStruct ds = docstructs.get("VDS2");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("VS")) {
-                    DocStruct ds = docstructs.get("VS");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("VS1")) {
-                    DocStruct ds = docstructs.get("VS1");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("VS2")) {
-                    DocStruct ds = docstructs.get("VS2");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("VS3")) {
-                    DocStruct ds = docstructs.get("VS3");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("VS4")) {
-                    DocStruct ds = docstructs.get("VS4");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("VS5")) {
-                    DocStruct ds = docstructs.get("VS5");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("VS6")) {
-                    DocStruct ds = docstructs.get("VS6");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("VS7")) {
-                    DocStruct ds = docstructs.get("VS7");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("VS8")) {
-                    DocStruct ds = docstructs.get("VS8");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("VS9")) {
-                    DocStruct ds = docstructs.get("VS9");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("VS10")) {
-                    DocStruct ds = docstructs.get("VS10");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("VS11")) {
-                    DocStruct ds = docstructs.get("VS11");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                index = setDocstructAndPagesToLogical(logical, physType, index, text);
 
-                if (docstructs.containsKey("NS")) {
-                    DocStruct ds = docstructs.get("NS");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("NS1")) {
-                    DocStruct ds = docstructs.get("NS1");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("NS2")) {
-                    DocStruct ds = docstructs.get("NS2");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("NS3")) {
-                    logical.addChild(docstructs.get("NS3"));
-                    DocStruct ds = docstructs.get("NS3");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("NS4")) {
-                    DocStruct ds = docstructs.get("NS4");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("NS5")) {
-                    DocStruct ds = docstructs.get("NS5");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("NS6")) {
-                    DocStruct ds = docstructs.get("NS6");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("NS7")) {
-                    DocStruct ds = docstructs.get("NS7");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("NS8")) {
-                    DocStruct ds = docstructs.get("NS8");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("NS9")) {
-                    DocStruct ds = docstructs.get("NS9");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("HDS")) {
-                    DocStruct ds = docstructs.get("HDS");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-
-                if (docstructs.containsKey("HD")) {
-                    DocStruct ds = docstructs.get("HD");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("ER")) {
-                    DocStruct ds = docstructs.get("ER");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("SV")) {
-                    DocStruct ds = docstructs.get("SV");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("SO")) {
-                    DocStruct ds = docstructs.get("SO");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("SU")) {
-                    DocStruct ds = docstructs.get("SU");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("Farbkarte")) {
-                    DocStruct ds = docstructs.get("Farbkarte");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("Farbkarte_Buchblock")) {
-                    DocStruct ds = docstructs.get("Farbkarte_Buchblock");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("Farbkarte_Bucheinband")) {
-                    DocStruct ds = docstructs.get("Farbkarte_Bucheinband");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("Farbkarte_Einband")) {
-                    DocStruct ds = docstructs.get("Farbkarte_Einband");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("FR")) {
-                    DocStruct ds = docstructs.get("FR");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-                if (docstructs.containsKey("Fragm")) {
-                    DocStruct ds = docstructs.get("Fragm");
-                    index = setDocstructAndPagesToLogical(logical, physType, index, ds);
-                }
-            } catch (TypeNotAllowedAsChildException e) {
-                log.error(e);
-                return PluginReturnValue.ERROR;
+        List<String> unmatchedImages;
+        List<String> removedDocstructs;
+        try {
+            PaginationBuilder builder = new PaginationBuilder(configuration, prefs, metrics, progress);
+            if (incremental) {
+                unmatchedImages = builder.update(digDoc, physical, logical, foldername, orderedImageNameList);
+            } else {
+                unmatchedImages = builder.assemble(digDoc, physical, logical, foldername, classifications);
             }
+            removedDocstructs = builder.getRemovedDocstructs();
+        } catch (TypeNotAllowedForParentException | TypeNotAllowedAsChildException | MetadataTypeNotAllowedException
+                | DocStructHasNoTypeException e) {
+            log.error(e);
+            return PluginReturnValue.ERROR;
+        }
+        // last checkpoint, a cancelled analysis neither adds journal entries nor changes the metadata file
+        progress.startPhase(AnalysisMetrics.PHASE_WRITING, 1);
+        if (!unmatchedImages.isEmpty()) {
+            writeUnmatchedImagesToJournal(process, unmatchedImages);
+            metrics.endPhase(AnalysisMetrics.PHASE_JOURNAL);
+        } else {
+            removeUnmatchedImagesFile(process);
+        }
+        if (!removedDocstructs.isEmpty()) {
+            journal.addMessage(process, LogType.INFO, "docstructs without remaining images were removed: " + String.join(", ", removedDocstructs));
         }
         try {
-            process.writeMetadataFile(ff);
+            metadataStore.write(process, ff);
+            metrics.endPhase(AnalysisMetrics.PHASE_WRITING);
         } catch (WriteException | PreferencesException | IOException | SwapException e) {
             log.error(e);
             return PluginReturnValue.ERROR;
@@ -418,30 +314,157 @@ public class ImageNameAnalyzer implements IStepPluginVersion2 {
         return PluginReturnValue.FINISH;
     }
 
-    private int setDocstructAndPagesToLogical(DocStruct logical, MetadataType physType, int index, DocStruct ds) {
+    /**
+     * Start listing and classifying the derivative folders in the background
+     */
+    private void startCrossCheck(Process process, FolderCrossCheck crossCheck) throws IOException, SwapException, DAOException {
+        for (String folder : configuration.getCrossCheckFolders()) {
+            crossCheck.add(folder, processFolders.getDerivativeFolder(process, folder));
+        }
+    }
+
+    /**
+     * Set the source for the image folder and the derivative folders. A different source for the derivative folders can be set afterwards.
+     *
+     * @param folderSource lists the image folders
+     */
+    public void setFolderSource(ImageFolderSource folderSource) {
+        this.folderSource = folderSource;
+        this.derivativeFolderSource = folderSource;
+    }
+
+    /**
+     * List the image names of the folder, either with the storage provider or, if configured, with a directory stream into a compact sorted index.
+     * The extensions only apply to the streaming listing, the derivative folders are listed without them, because they contain other file types.
+     */
+    private List<String> listImages(String foldername, Set<String> extensions) throws IOException {
+        if (configuration.isStreamingListing()) {
+            Path folder = Paths.get(foldername);
+            if (Files.isDirectory(folder)) {
+                return ImageFolderIndex.read(folder, extensions, configuration.isNaturalSort());
+            }
+            // folders on other storages can only be listed by the storage provider
+            String[] names = StorageProvider.getInstance()
+                    .list(foldername)
+                    .stream()
+                    .filter(name -> ImageFolderIndex.accept(name, extensions))
+                    .toArray(String[]::new);
+            return ImageFolderIndex.of(names, configuration.isNaturalSort());
+        }
+        return StorageProvider.getInstance().list(foldername);
+    }
+
+    /**
+     * Classify the image names. Use the partial result of a background pre-analysis of the folder, or the cached results of a former run if the
+     * image names and the configuration are unchanged.
+     */
+    private ImageClassification[] classify(Process process, String foldername, List<String> orderedImageNameList, AnalysisProgress progress) {
+        progress.startPhase(AnalysisMetrics.PHASE_CLASSIFICATION, orderedImageNameList.size());
+        FolderPreAnalysis preAnalysis = preAnalysisWatcher.take(foldername);
+        if (preAnalysis != null && preAnalysis.getClassificationHash().equals(configuration.getClassificationHash())) {
+            log.debug(process.getTitel() + ": use pre-analysis of " + preAnalysis.size() + " images");
+            return preAnalysis.complete(orderedImageNameList);
+        }
+
+        ClassificationCache cache = null;
+        if (configuration.isClassificationCache()) {
+            try {
+                cache = new ClassificationCache(processFolders.getDataFolder(process).resolve(ClassificationCache.FILE_NAME), configuration);
+                ImageClassification[] cached = cache.load(orderedImageNameList);
+                if (cached != null) {
+                    log.debug(process.getTitel() + ": use cached classification");
+                    return cached;
+                }
+            } catch (IOException | SwapException e) {
+                log.warn(process.getTitel() + ": cannot access classification cache", e);
+            }
+        }
+        ImageClassification[] classifications = new ImageClassifier(configuration).classifyAll(orderedImageNameList, progress);
+        if (cache != null) {
+            cache.store(orderedImageNameList, classifications);
+        }
+        return classifications;
+    }
+
+    /**
+     * Analyse the images of the given process without reading or writing its metadata file. This is not part of {@link #run()}, a step must not be
+     * closed without a pagination.
+     *
+     * @param process the process to analyse
+     * @return the hits per rule, the unmatched images and the planned order of pages and docstructs
+     * @throws IOException if the image folder cannot be listed
+     */
+    public DryRunReport dryRun(Process process) throws IOException, SwapException, DAOException {
+        String foldername = processFolders.getImageFolder(process);
+        List<String> imageNames = folderSource.list(foldername);
+        return new DryRunReport(foldername, configuration, new ImageClassifier(configuration).classifyAll(imageNames));
+    }
+
+    /**
+     * Start the background classification of the image folder of the given process, so that the analysis step only has to check the result
+     * against the final folder content. Has no effect if preAnalysis is set to off.
+     *
+     * @param process the process whose images are still being uploaded
+     */
+    public void startPreAnalysis(Process process) {
+        if (PreAnalysisWatcher.MODE_OFF.equals(configuration.getPreAnalysis())) {
+            log.warn(process.getTitel() + ": pre-analysis requested, but preAnalysis is set to off");
+            return;
+        }
         try {
-            logical.addChild(ds);
-            List<Reference> refs = ds.getAllToReferences("logical_physical");
-            if (refs != null) {
-                for (Reference ref : refs) {
-                    DocStruct dsPage = ref.getTarget();
-                    Metadata mdPhysPageNo = new Metadata(physType);
-                    mdPhysPageNo.setValue(String.valueOf(index));
-                    dsPage.addMetadata(mdPhysPageNo);
-                    logical.addReferenceTo(dsPage, "logical_physical");
-                    index = index + 1;
-                }
+            preAnalysisWatcher.watch(processFolders.getImageFolder(process), configuration);
+        } catch (IOException | SwapException | DAOException e) {
+            log.error(process.getTitel() + ": cannot start pre-analysis", e);
+        }
+    }
+
+    /**
+     * Write a single journal entry for all images without a match. The entry contains the number of images and the first names, the complete list
+     * can optionally be written into a file within the process folder.
+     */
+    private void writeUnmatchedImagesToJournal(Process process, List<String> unmatchedImages) {
+        StringBuilder message = new StringBuilder();
+        message.append("no match found for ").append(unmatchedImages.size()).append(" image(s): ");
+        int listed = Math.min(unmatchedImages.size(), configuration.getMaxUnmatchedImagesInJournal());
+        message.append(String.join(", ", unmatchedImages.subList(0, listed)));
+        if (listed < unmatchedImages.size()) {
+            message.append(", ... (").append(unmatchedImages.size() - listed).append(" more)");
+        }
+
+        if (configuration.isWriteUnmatchedImagesFile()) {
+            try {
+                Path file = processFolders.getDataFolder(process).resolve(UNMATCHED_IMAGES_FILE);
+                Files.write(file, unmatchedImages, StandardCharsets.UTF_8);
+                message.append("; complete list: ").append(file.toString());
+            } catch (IOException | SwapException e) {
+                log.error(e);
             }
-        } catch (TypeNotAllowedAsChildException | MetadataTypeNotAllowedException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
         }
 
-        return index;
+        journal.addMessage(process, LogType.ERROR, message.toString());
+        log.debug(process.getTitel() + ": " + message);
+    }
+
+    /**
+     * Remove the list of unmatched images of an earlier run, so the process folder does not contain an outdated list
+     */
+    private void removeUnmatchedImagesFile(Process process) {
+        try {
+            Files.deleteIfExists(processFolders.getDataFolder(process).resolve(UNMATCHED_IMAGES_FILE));
+        } catch (IOException | SwapException e) {
+            log.error(e);
+        }
     }
 
+    /**
+     * Cancel all running analyses of this instance. An analysis stops at its next checkpoint and leaves the metadata file unchanged, unless it is
+     * already writing it.
+     */
     @Override
     public String cancel() {
+        for (AnalysisProgress running : runningAnalyses) {
+            running.cancel();
+        }
         return null;
     }
 
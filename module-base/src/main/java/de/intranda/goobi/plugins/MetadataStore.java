@@ -0,0 +1,46 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.goobi.beans.Process;
+
+import de.sub.goobi.helper.exceptions.SwapException;
+import ugh.dl.Fileformat;
+import ugh.dl.Prefs;
+import ugh.exceptions.PreferencesException;
+import ugh.exceptions.ReadException;
+import ugh.exceptions.WriteException;
+
+/**
+ * Reads and writes the metadata file of a process
+ */
+public interface MetadataStore {
+
+    /**
+     * @param process the analysed process
+     * @return the ruleset of the process
+     */
+    Prefs getPreferences(Process process);
+
+    /**
+     * Check if the metadata file of the process already contains pages, without reading it completely
+     *
+     * @param process the process to check
+     * @return true if the physical structure contains pages
+     */
+    boolean containsPages(Process process) throws IOException, SwapException, XMLStreamException;
+
+    /**
+     * @param process the process to read
+     * @return the metadata of the process
+     */
+    Fileformat read(Process process) throws ReadException, PreferencesException, IOException, SwapException;
+
+    /**
+     * @param process the process to write
+     * @param fileformat the new metadata of the process
+     */
+    void write(Process process, Fileformat fileformat) throws WriteException, PreferencesException, IOException, SwapException;
+}
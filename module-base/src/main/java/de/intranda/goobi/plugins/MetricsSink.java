@@ -0,0 +1,15 @@
+package de.intranda.goobi.plugins;
+
+/**
+ * Receives the measurements of each finished analysis. Implementations must be thread-safe, as analyses of different processes can run in
+ * parallel.
+ */
+public interface MetricsSink {
+
+    /**
+     * Publish the measurements of a finished analysis
+     *
+     * @param metrics the measurements
+     */
+    void publish(AnalysisMetrics metrics);
+}
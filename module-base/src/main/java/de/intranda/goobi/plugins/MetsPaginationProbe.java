@@ -0,0 +1,90 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import de.sub.goobi.helper.StorageProvider;
+
+/**
+ * Checks if a METS file already contains pages without creating the digital document. The file is streamed until the first page in the physical
+ * structMap is found, so for paginated processes usually only a small part of the file is read.
+ */
+public final class MetsPaginationProbe {
+
+    private static final String METS_NAMESPACE = "http://www.loc.gov/METS/";
+
+    private static final XMLInputFactory FACTORY = createFactory();
+
+    private MetsPaginationProbe() {
+    }
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        return factory;
+    }
+
+    /**
+     * Check if the physical structMap of the given METS file contains at least one page
+     *
+     * @param metsFile path to the meta.xml file
+     * @return true if a page was found
+     * @throws IOException if the file cannot be read
+     * @throws XMLStreamException if the file is not well-formed
+     */
+    public static boolean containsPages(Path metsFile) throws IOException, XMLStreamException {
+        try (InputStream in = StorageProvider.getInstance().newInputStream(metsFile)) {
+            return containsPages(in);
+        }
+    }
+
+    /**
+     * Check if the physical structMap of a METS document contains at least one page
+     *
+     * @param in the METS document, the stream is not closed
+     * @return true if a page was found
+     * @throws XMLStreamException if the document is not well-formed
+     */
+    public static boolean containsPages(InputStream in) throws XMLStreamException {
+        XMLStreamReader reader = FACTORY.createXMLStreamReader(in);
+        try {
+            boolean physicalStructMap = false;
+            // depth of div elements within the physical structMap, 1 is the root element, pages are on level 2
+            int depth = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT && METS_NAMESPACE.equals(reader.getNamespaceURI())) {
+                    String name = reader.getLocalName();
+                    if ("structMap".equals(name)) {
+                        physicalStructMap = "PHYSICAL".equals(reader.getAttributeValue(null, "TYPE"));
+                        depth = 0;
+                    } else if (physicalStructMap && "div".equals(name)) {
+                        depth++;
+                        if (depth > 1) {
+                            return true;
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && METS_NAMESPACE.equals(reader.getNamespaceURI())) {
+                    String name = reader.getLocalName();
+                    if (physicalStructMap && "div".equals(name)) {
+                        depth--;
+                    } else if (physicalStructMap && "structMap".equals(name)) {
+                        // the physical structMap was completely read without a page
+                        return false;
+                    }
+                }
+            }
+            return false;
+        } finally {
+            reader.close();
+        }
+    }
+}
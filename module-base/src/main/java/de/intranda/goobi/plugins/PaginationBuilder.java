@@ -0,0 +1,467 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.SystemUtils;
+
+import de.intranda.goobi.plugins.StructureRuleMatcher.StructureMatch;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j;
+import ugh.dl.ContentFile;
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.DocStructType;
+import ugh.dl.Metadata;
+import ugh.dl.MetadataType;
+import ugh.dl.Prefs;
+import ugh.dl.Reference;
+import ugh.exceptions.MetadataTypeNotAllowedException;
+import ugh.exceptions.TypeNotAllowedAsChildException;
+import ugh.exceptions.TypeNotAllowedForParentException;
+
+/**
+ * Creates the physical and logical structure of a digital document from an ordered list of image names. The builder does not need a Goobi
+ * process, so it can be used from the plugin as well as from tools working on plain folders.
+ */
+@Log4j
+public class PaginationBuilder {
+
+    private final AnalyzerConfiguration configuration;
+
+    private final Prefs prefs;
+
+    private final AnalysisMetrics metrics;
+
+    private final AnalysisProgress progress;
+
+    /** types of the docstructs deleted by {@link #update}, because all their pages were removed */
+    @Getter
+    private final List<String> removedDocstructs = new ArrayList<>();
+
+    public PaginationBuilder(AnalyzerConfiguration configuration, Prefs prefs) {
+        this(configuration, prefs, new AnalysisMetrics(null, null));
+    }
+
+    public PaginationBuilder(AnalyzerConfiguration configuration, Prefs prefs, AnalysisMetrics metrics) {
+        this(configuration, prefs, metrics, new AnalysisProgress());
+    }
+
+    public PaginationBuilder(AnalyzerConfiguration configuration, Prefs prefs, AnalysisMetrics metrics, AnalysisProgress progress) {
+        this.configuration = configuration;
+        this.prefs = prefs;
+        this.metrics = metrics;
+        this.progress = progress;
+    }
+
+    /**
+     * Classify the images and create a page for each image
+     *
+     * @param digDoc the digital document to add the structure elements to
+     * @param physical the physical root element, must not contain pages
+     * @param logical the logical element to add the docstructs to
+     * @param foldername image folder, used to create the file locations
+     * @param orderedImageNameList the image names in folder order
+     * @return all image names that matched neither the pagination nor a structure rule
+     */
+    public List<String> build(DigitalDocument digDoc, DocStruct physical, DocStruct logical, String foldername, List<String> orderedImageNameList)
+            throws TypeNotAllowedForParentException, TypeNotAllowedAsChildException, MetadataTypeNotAllowedException {
+        ImageClassification[] classifications = new ImageClassifier(configuration).classifyAll(orderedImageNameList, progress);
+        metrics.endPhase(AnalysisMetrics.PHASE_CLASSIFICATION);
+        return assemble(digDoc, physical, logical, foldername, classifications);
+    }
+
+    /**
+     * Create a page for each classified image and assign the pages to the logical structure. The structure is created in the order of the given
+     * classifications.
+     *
+     * @param digDoc the digital document to add the structure elements to
+     * @param physical the physical root element, must not contain pages
+     * @param logical the logical element to add the docstructs to
+     * @param foldername image folder, used to create the file locations
+     * @param classifications the classified images in folder order
+     * @return all image names that matched neither the pagination nor a structure rule
+     */
+    public List<String> assemble(DigitalDocument digDoc, DocStruct physical, DocStruct logical, String foldername,
+            ImageClassification[] classifications) throws TypeNotAllowedForParentException, TypeNotAllowedAsChildException,
+            MetadataTypeNotAllowedException {
+        DocStructType pageType = prefs.getDocStrctTypeByName("page");
+        MetadataType physType = prefs.getMetadataTypeByName("physPageNumber");
+        MetadataType logType = prefs.getMetadataTypeByName("logicalPageNumber");
+        Map<String, DocStruct> docstructs = new HashMap<>();
+        Map<String, StructureMatch> matches = new HashMap<>();
+        List<String> unmatchedImages = new ArrayList<>();
+        String locationPrefix = getLocationPrefix(foldername);
+        DocStruct text = null;
+        if (configuration.isOrderImagesByDocstruct()) {
+            text = digDoc.createDocStruct(prefs.getDocStrctTypeByName("Textblock"));
+        }
+        progress.startPhase(AnalysisMetrics.PHASE_ASSEMBLY, classifications.length);
+        for (int index = 0; index < classifications.length; index++) {
+            progress.advance();
+            ImageClassification classification = classifications[index];
+            String imageName = classification.getImageName();
+            DocStruct dsPage = createPage(digDoc, pageType, locationPrefix, imageName);
+            physical.addChild(dsPage);
+            Metadata mdLogicalPageNo = new Metadata(logType);
+            mdLogicalPageNo.setValue(classification.getLogicalPageNumber());
+            dsPage.addMetadata(mdLogicalPageNo);
+            if (!configuration.isOrderImagesByDocstruct()) {
+                Metadata mdPhysPageNo = new Metadata(physType);
+                mdPhysPageNo.setValue(String.valueOf(index + 1));
+                dsPage.addMetadata(mdPhysPageNo);
+                logical.addReferenceTo(dsPage, "logical_physical");
+            }
+
+            StructureMatch structureMatch = classification.getStructureMatch();
+            if (structureMatch != null) {
+                metrics.countRuleHit(structureMatch.getFilepart());
+                String key = structureMatch.getKey();
+                if (docstructs.containsKey(key)) {
+                    DocStruct ds = docstructs.get(key);
+                    ds.addReferenceTo(dsPage, "logical_physical");
+                } else {
+                    DocStructType type = prefs.getDocStrctTypeByName(structureMatch.getDocstruct());
+                    DocStruct ds = digDoc.createDocStruct(type);
+                    if (!configuration.isOrderImagesByDocstruct()) {
+                        logical.addChild(ds);
+                    }
+                    ds.addReferenceTo(dsPage, "logical_physical");
+                    docstructs.put(key, ds);
+                    matches.put(key, structureMatch);
+                }
+            } else {
+                if (classification.isUnmatched()) {
+                    // no match found, use uncounted, collect it for the process log
+                    unmatchedImages.add(imageName);
+                    metrics.countUnmatched();
+                    log.debug("no match found for image " + imageName);
+                } else {
+                    metrics.countRuleHit(AnalysisMetrics.PAGINATION_RULE);
+                }
+                if (configuration.isOrderImagesByDocstruct()) {
+                    text.addReferenceTo(dsPage, "logical_physical");
+                }
+            }
+        }
+        metrics.endPhase(AnalysisMetrics.PHASE_ASSEMBLY);
+        if (configuration.isOrderImagesByDocstruct()) {
+            // order docstructs by their configured rank, the text block is inserted at its configured position
+            List<StructureMatch> orderedMatches = configuration.getDocstructOrder().arrange(matches.values());
+            progress.startPhase(AnalysisMetrics.PHASE_ORDERING, orderedMatches.size());
+            int index = 1;
+            for (StructureMatch structureMatch : orderedMatches) {
+                DocStruct ds = structureMatch == null ? text : docstructs.get(structureMatch.getKey());
+                index = setDocstructAndPagesToLogical(logical, physType, index, ds);
+                progress.advance();
+            }
+            metrics.endPhase(AnalysisMetrics.PHASE_ORDERING);
+        }
+        return unmatchedImages;
+    }
+
+    /**
+     * Update an existing pagination to the current folder content. Pages of removed images are deleted, pages for new images are inserted at
+     * their folder position and the physical page numbers are corrected where necessary. Existing pages keep their metadata and references, an
+     * image is matched to its page by the name without extension, so converted images (e.g. jpg instead of tif) keep their page. Docstructs
+     * whose pages were all removed are deleted as well, see {@link #getRemovedDocstructs()}. New references and docstructs are placed in page
+     * order, as {@link #assemble} would create them. Only usable if the order is based on the image names.
+     *
+     * @param digDoc the digital document containing the existing pagination
+     * @param physical the physical root element
+     * @param logical the logical element to add new docstructs to
+     * @param foldername image folder, used to create the file locations
+     * @param orderedImageNameList the image names in folder order
+     * @return the names of new images that matched neither the pagination nor a structure rule
+     */
+    public List<String> update(DigitalDocument digDoc, DocStruct physical, DocStruct logical, String foldername, List<String> orderedImageNameList)
+            throws TypeNotAllowedForParentException, TypeNotAllowedAsChildException, MetadataTypeNotAllowedException {
+        DocStructType pageType = prefs.getDocStrctTypeByName("page");
+        MetadataType physType = prefs.getMetadataTypeByName("physPageNumber");
+        MetadataType logType = prefs.getMetadataTypeByName("logicalPageNumber");
+        List<String> unmatchedImages = new ArrayList<>();
+
+        String locationPrefix = getLocationPrefix(foldername);
+
+        // remove pages of images that no longer exist
+        Set<String> listedBaseNames = new HashSet<>();
+        for (String imageName : orderedImageNameList) {
+            listedBaseNames.add(getBaseName(imageName));
+        }
+        Map<String, DocStruct> pagesByBaseName = new HashMap<>();
+        Set<DocStruct> removedPages = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<DocStruct> existingPages = physical.getAllChildren() == null ? Collections.emptyList() : physical.getAllChildren();
+        for (DocStruct page : existingPages) {
+            String imageName = getImageName(page);
+            String baseName = imageName == null ? null : getBaseName(imageName);
+            if (baseName != null && listedBaseNames.contains(baseName) && !pagesByBaseName.containsKey(baseName)) {
+                pagesByBaseName.put(baseName, page);
+            } else {
+                removedPages.add(page);
+            }
+        }
+        // docstructs that lost all their pages would be empty
+        for (DocStruct ds : detachPages(digDoc, physical, removedPages)) {
+            DocStruct parent = ds.getParent();
+            if (ds != logical && parent != null && getPageReferences(ds).isEmpty() && (ds.getAllChildren() == null || ds.getAllChildren().isEmpty())) {
+                parent.removeChild(ds);
+                removedDocstructs.add(ds.getType().getName());
+                log.debug("removed docstruct " + ds.getType().getName() + " without pages");
+            }
+        }
+
+        // new structure pages are added to the existing docstruct with the same filepart and group, as in assemble
+        ImageClassifier classifier = new ImageClassifier(configuration);
+        Map<String, DocStruct> docstructs = new HashMap<>();
+        List<DocStruct> logicalChildren = logical.getAllChildren();
+        if (logicalChildren != null) {
+            for (DocStruct child : logicalChildren) {
+                String key = getStructureKey(classifier, child);
+                if (key != null) {
+                    docstructs.putIfAbsent(key, child);
+                }
+            }
+        }
+
+        // folder position of each page, docstructs with new pages and new docstructs, they are put in place after all pages are known
+        Map<DocStruct, Integer> pageIndex = new IdentityHashMap<>();
+        Set<DocStruct> changedDocstructs = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<DocStruct> newDocstructs = new ArrayList<>();
+
+        progress.startPhase(AnalysisMetrics.PHASE_ASSEMBLY, orderedImageNameList.size());
+        for (int index = 0; index < orderedImageNameList.size(); index++) {
+            progress.advance();
+            String imageName = orderedImageNameList.get(index);
+            DocStruct dsPage = pagesByBaseName.remove(getBaseName(imageName));
+            if (dsPage != null) {
+                if (!imageName.equals(getImageName(dsPage))) {
+                    // the image was converted, point the page to the new file
+                    dsPage.getAllContentFiles().get(0).setLocation(locationPrefix.concat(imageName));
+                }
+            } else {
+                dsPage = createPage(digDoc, pageType, locationPrefix, imageName);
+                List<DocStruct> pages = physical.getAllChildren();
+                physical.addChild(Math.min(index, pages == null ? 0 : pages.size()), dsPage);
+                logical.addReferenceTo(dsPage, "logical_physical");
+                changedDocstructs.add(logical);
+
+                ImageClassification classification = classifier.classify(imageName);
+                Metadata mdLogicalPageNo = new Metadata(logType);
+                mdLogicalPageNo.setValue(classification.getLogicalPageNumber());
+                dsPage.addMetadata(mdLogicalPageNo);
+                StructureMatch structureMatch = classification.getStructureMatch();
+                if (structureMatch != null) {
+                    DocStruct ds = docstructs.get(structureMatch.getKey());
+                    if (ds == null) {
+                        ds = digDoc.createDocStruct(prefs.getDocStrctTypeByName(structureMatch.getDocstruct()));
+                        newDocstructs.add(ds);
+                        docstructs.put(structureMatch.getKey(), ds);
+                    }
+                    ds.addReferenceTo(dsPage, "logical_physical");
+                    changedDocstructs.add(ds);
+                }
+                if (classification.isUnmatched()) {
+                    unmatchedImages.add(imageName);
+                    metrics.countUnmatched();
+                } else {
+                    metrics.countRuleHit(classification.getRuleName());
+                }
+            }
+
+            // renumber the page, if its position changed
+            String physPageNumber = String.valueOf(index + 1);
+            List<? extends Metadata> numbers = dsPage.getAllMetadataByType(physType);
+            if (numbers == null || numbers.isEmpty()) {
+                Metadata mdPhysPageNo = new Metadata(physType);
+                mdPhysPageNo.setValue(physPageNumber);
+                dsPage.addMetadata(mdPhysPageNo);
+            } else if (!physPageNumber.equals(numbers.get(0).getValue())) {
+                numbers.get(0).setValue(physPageNumber);
+            }
+            pageIndex.put(dsPage, index);
+        }
+
+        // put new references and docstructs where assemble would create them: references in page order, docstructs at their first page
+        for (DocStruct ds : changedDocstructs) {
+            sortPageReferences(ds, pageIndex);
+        }
+        for (DocStruct ds : newDocstructs) {
+            int firstPage = getFirstPage(ds, pageIndex);
+            List<DocStruct> children = logical.getAllChildren();
+            int position = 0;
+            if (children != null) {
+                while (position < children.size() && getFirstPage(children.get(position), pageIndex) <= firstPage) {
+                    position++;
+                }
+            }
+            logical.addChild(position, ds);
+        }
+        metrics.endPhase(AnalysisMetrics.PHASE_ASSEMBLY);
+        return unmatchedImages;
+    }
+
+    /**
+     * Order the page references of a docstruct by the folder position of the pages, other references follow them
+     */
+    private static void sortPageReferences(DocStruct ds, Map<DocStruct, Integer> pageIndex) {
+        ds.getAllToReferences().sort(Comparator.comparingInt(ref -> "logical_physical".equals(ref.getType())
+                ? pageIndex.getOrDefault(ref.getTarget(), Integer.MAX_VALUE) : Integer.MAX_VALUE));
+    }
+
+    /**
+     * @return the folder position of the first page of a docstruct, -1 if it has no pages
+     */
+    private static int getFirstPage(DocStruct ds, Map<DocStruct, Integer> pageIndex) {
+        int firstPage = -1;
+        for (Reference ref : getPageReferences(ds)) {
+            Integer index = pageIndex.get(ref.getTarget());
+            if (index != null && (firstPage == -1 || index < firstPage)) {
+                firstPage = index;
+            }
+        }
+        return firstPage;
+    }
+
+    /**
+     * Get the structure key (filepart and group) shared by all pages of a docstruct
+     *
+     * @return the key or null, if the docstruct has no pages or its pages belong to different structure rules
+     */
+    private static String getStructureKey(ImageClassifier classifier, DocStruct ds) {
+        String key = null;
+        for (Reference ref : getPageReferences(ds)) {
+            String imageName = getImageName(ref.getTarget());
+            StructureMatch structureMatch = imageName == null ? null : classifier.classify(imageName).getStructureMatch();
+            if (structureMatch == null || key != null && !key.equals(structureMatch.getKey())) {
+                return null;
+            }
+            key = structureMatch.getKey();
+        }
+        return key;
+    }
+
+    private static List<Reference> getPageReferences(DocStruct ds) {
+        List<Reference> refs = ds.getAllToReferences("logical_physical");
+        return refs == null ? Collections.emptyList() : refs;
+    }
+
+    private static String getBaseName(String imageName) {
+        int dot = imageName.lastIndexOf('.');
+        return dot > 0 ? imageName.substring(0, dot) : imageName;
+    }
+
+    /**
+     * Get the file URI of the folder, it is shared by all pages of the folder
+     */
+    private static String getLocationPrefix(String foldername) {
+        if (SystemUtils.IS_OS_WINDOWS) {
+            return "file:/" + foldername;
+        } else {
+            return "file://" + foldername;
+        }
+    }
+
+    private static DocStruct createPage(DigitalDocument digDoc, DocStructType pageType, String locationPrefix, String imageName)
+            throws TypeNotAllowedForParentException {
+        DocStruct dsPage = digDoc.createDocStruct(pageType);
+        ContentFile cf = new ContentFile();
+        cf.setLocation(locationPrefix.concat(imageName));
+        dsPage.addContentFile(cf);
+        return dsPage;
+    }
+
+    /**
+     * Get the file name of the first content file of a page
+     */
+    private static String getImageName(DocStruct page) {
+        List<ContentFile> files = page.getAllContentFiles();
+        if (files == null || files.isEmpty() || files.get(0).getLocation() == null) {
+            return null;
+        }
+        String location = files.get(0).getLocation();
+        return location.substring(location.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Detach the given pages from the physical element, the file set and all logical elements referencing them. Each list is filtered once, so
+     * the costs are linear in the number of pages and references, independent of the number of removed pages.
+     *
+     * @return the logical elements that referenced at least one of the removed pages
+     */
+    private static Set<DocStruct> detachPages(DigitalDocument digDoc, DocStruct physical, Set<DocStruct> removedPages) {
+        Set<DocStruct> sources = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (removedPages.isEmpty()) {
+            return sources;
+        }
+        Set<ContentFile> removedFiles = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (DocStruct page : removedPages) {
+            List<ContentFile> files = page.getAllContentFiles();
+            if (files != null) {
+                removedFiles.addAll(files);
+            }
+            List<Reference> refs = page.getAllFromReferences();
+            if (refs != null) {
+                for (Reference ref : refs) {
+                    sources.add(ref.getSource());
+                }
+            }
+        }
+        for (DocStruct source : sources) {
+            source.getAllToReferences().removeIf(ref -> removedPages.contains(ref.getTarget()));
+        }
+        List<ContentFile> allFiles = digDoc.getFileSet() == null ? null : digDoc.getFileSet().getAllFiles();
+        if (allFiles != null) {
+            allFiles.removeIf(removedFiles::contains);
+        }
+        physical.getAllChildren().removeIf(removedPages::contains);
+        return sources;
+    }
+
+    /**
+     * Remove all pages, their files and references and all logical children. The lists are filtered in bulk instead of removing the elements one
+     * by one, because each single removal searches the list.
+     */
+    public static void resetStructureMaps(DigitalDocument digDoc, DocStruct physical, DocStruct logical) {
+        List<DocStruct> pages = physical.getAllChildren();
+        if (pages != null && !pages.isEmpty()) {
+            Set<DocStruct> removedPages = Collections.newSetFromMap(new IdentityHashMap<>());
+            removedPages.addAll(pages);
+            detachPages(digDoc, physical, removedPages);
+        }
+
+        List<DocStruct> children = logical.getAllChildren();
+        if (children != null) {
+            children.clear();
+        }
+    }
+
+    private int setDocstructAndPagesToLogical(DocStruct logical, MetadataType physType, int index, DocStruct ds)
+            throws TypeNotAllowedAsChildException, MetadataTypeNotAllowedException {
+        try {
+            logical.addChild(ds);
+            List<Reference> refs = ds.getAllToReferences("logical_physical");
+            if (refs != null) {
+                for (Reference ref : refs) {
+                    DocStruct dsPage = ref.getTarget();
+                    Metadata mdPhysPageNo = new Metadata(physType);
+                    mdPhysPageNo.setValue(String.valueOf(index));
+                    dsPage.addMetadata(mdPhysPageNo);
+                    logical.addReferenceTo(dsPage, "logical_physical");
+                    index = index + 1;
+                }
+            }
+        } catch (TypeNotAllowedAsChildException | MetadataTypeNotAllowedException e) {
+            log.error("cannot add " + ds.getType().getName() + " to " + logical.getType().getName(), e);
+            throw e;
+        }
+
+        return index;
+    }
+}
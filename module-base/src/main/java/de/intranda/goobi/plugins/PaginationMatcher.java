@@ -0,0 +1,209 @@
+package de.intranda.goobi.plugins;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j;
+
+/**
+ * Extracts the pagination from an image name using the configured paginationRegex.
+ *
+ * Patterns of the form <code>.*_SEGMENT\.\w+</code>, like the default pattern, are evaluated without the leading <code>.*_</code>: the extension
+ * is split off once and only the segments after an underscore are matched against <code>SEGMENT</code>, starting with the last one. This gives
+ * the same result as the greedy pattern without backtracking over the whole name. Other patterns, and segments with a top-level alternative,
+ * anchors, word boundaries or lookarounds, are evaluated as they are.
+ *
+ * Each evaluation has a budget of character reads, so a pathological pattern cannot stall the step. A name exceeding the budget is treated as
+ * not matching.
+ */
+@Log4j
+public class PaginationMatcher {
+
+    private static final String PREFIX = ".*_";
+
+    private static final String SUFFIX = "\\.\\w+";
+
+    private final Pattern pattern;
+
+    /** pattern for the segment between the last matching underscore and the extension, null if the pattern cannot be reduced */
+    private final Pattern segmentPattern;
+
+    @Getter
+    private final long budget;
+
+    public PaginationMatcher(Pattern pattern, long budget) {
+        this.pattern = pattern;
+        this.budget = budget;
+        this.segmentPattern = reduce(pattern.pattern());
+    }
+
+    private static Pattern reduce(String regex) {
+        if (!regex.startsWith(PREFIX) || !regex.endsWith(SUFFIX) || regex.length() <= PREFIX.length() + SUFFIX.length()) {
+            return null;
+        }
+        String segment = regex.substring(PREFIX.length(), regex.length() - SUFFIX.length());
+        // the segment must not be able to consume the dot of the extension, otherwise the split would change the result
+        if (segment.indexOf('.') >= 0 || segment.endsWith("\\") || !isSelfContained(segment)) {
+            return null;
+        }
+        try {
+            return Pattern.compile(segment);
+        } catch (PatternSyntaxException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Check if the segment matches a substring the same way as it matches within the whole pattern. A top-level alternative would split the whole
+     * pattern (<code>.*_A|B\.\w+</code> is <code>(.*_A)|(B\.\w+)</code>), anchors, word boundaries and lookarounds would see the start or the
+     * end of the substring instead of the surrounding characters.
+     */
+    private static boolean isSelfContained(String segment) {
+        int groupDepth = 0;
+        int classDepth = 0;
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c == '\\') {
+                char escaped = i + 1 < segment.length() ? segment.charAt(i + 1) : ' ';
+                if (escaped == 'Q' || classDepth == 0 && "bBAGZz".indexOf(escaped) >= 0) {
+                    return false;
+                }
+                i++;
+            } else if (classDepth > 0) {
+                if (c == '[') {
+                    classDepth++;
+                } else if (c == ']') {
+                    classDepth--;
+                }
+            } else if (c == '[') {
+                classDepth++;
+            } else if (c == '(') {
+                if (segment.startsWith("(?=", i) || segment.startsWith("(?!", i) || segment.startsWith("(?<=", i) || segment.startsWith("(?<!", i)) {
+                    return false;
+                }
+                groupDepth++;
+            } else if (c == ')') {
+                groupDepth--;
+            } else if (c == '|' && groupDepth == 0 || c == '^' || c == '$') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the pattern is evaluated on the name suffix only
+     */
+    public boolean isSuffixAnchored() {
+        return segmentPattern != null;
+    }
+
+    /**
+     * Get the pagination of the given image name
+     *
+     * @param imageName name of the image file
+     * @return the first capturing group, or null if the name does not match or the evaluation exceeded its budget
+     */
+    public String match(String imageName) {
+        BudgetedSequence.Counter counter = new BudgetedSequence.Counter(budget);
+        try {
+            if (segmentPattern == null) {
+                return group(pattern.matcher(new BudgetedSequence(imageName, counter)));
+            }
+
+            int extensionStart = imageName.lastIndexOf('.');
+            if (extensionStart < 0 || extensionStart == imageName.length() - 1) {
+                return null;
+            }
+            for (int i = extensionStart + 1; i < imageName.length(); i++) {
+                if (!isWordCharacter(imageName.charAt(i))) {
+                    return null;
+                }
+            }
+            // the greedy .* of the original pattern prefers the last underscore
+            for (int underscore = imageName.lastIndexOf('_', extensionStart - 1); underscore >= 0; underscore =
+                    imageName.lastIndexOf('_', underscore - 1)) {
+                String segment = imageName.substring(underscore + 1, extensionStart);
+                Matcher matcher = segmentPattern.matcher(new BudgetedSequence(segment, counter));
+                if (matcher.matches()) {
+                    // without a capturing group, the whole pattern matches the whole name
+                    return matcher.groupCount() > 0 ? matcher.group(1) : imageName;
+                }
+            }
+            return null;
+        } catch (BudgetedSequence.BudgetExceededException e) {
+            log.warn("Evaluation of paginationRegex exceeded its budget for image " + imageName + ", image is treated as not matching");
+            return null;
+        }
+    }
+
+    private static String group(Matcher matcher) {
+        if (!matcher.matches()) {
+            return null;
+        }
+        return matcher.groupCount() > 0 ? matcher.group(1) : matcher.group();
+    }
+
+    private static boolean isWordCharacter(char c) {
+        return (c >= '0' && c <= '9') || c == '_' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /**
+     * Character sequence that counts all character reads of the regex engine and aborts the evaluation once the budget is used up
+     */
+    private static final class BudgetedSequence implements CharSequence {
+
+        private final String value;
+        private final Counter counter;
+
+        private BudgetedSequence(String value, Counter counter) {
+            this.value = value;
+            this.counter = counter;
+        }
+
+        @Override
+        public char charAt(int index) {
+            counter.count();
+            return value.charAt(index);
+        }
+
+        @Override
+        public int length() {
+            return value.length();
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new BudgetedSequence(value.substring(start, end), counter);
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+
+        private static final class Counter {
+            private long remaining;
+
+            private Counter(long budget) {
+                this.remaining = budget;
+            }
+
+            private void count() {
+                if (--remaining < 0) {
+                    throw new BudgetExceededException();
+                }
+            }
+        }
+
+        private static final class BudgetExceededException extends RuntimeException {
+            private static final long serialVersionUID = 1L;
+
+            private BudgetExceededException() {
+                super(null, null, false, false);
+            }
+        }
+    }
+}
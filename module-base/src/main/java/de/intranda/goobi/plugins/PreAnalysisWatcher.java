@@ -0,0 +1,261 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import de.sub.goobi.helper.StorageProvider;
+import lombok.extern.log4j.Log4j;
+
+/**
+ * Classifies the images of folders in the background while they are still being filled, e.g. by a scanner. Folders are observed with a
+ * {@link WatchService}, or listed periodically if watching is configured as <code>poll</code> or is not supported by the storage. When the analysis
+ * step runs, it takes the partial result and only has to classify the images that arrived since the last update.
+ *
+ * Folders are registered with {@link #watch(String, AnalyzerConfiguration)}, usually by the plugin running in one of the configured
+ * <code>preAnalysisStep</code> steps before the upload. Folders that are not taken within <code>preAnalysisMaxIdleHours</code> of their
+ * registration's configuration after their last change are dropped. The background threads only run while at least one folder is registered, they
+ * are stopped when the last folder is taken or dropped and started again by the next registration.
+ */
+@Log4j
+public class PreAnalysisWatcher {
+
+    public static final String MODE_OFF = "off";
+
+    public static final String MODE_WATCH = "watch";
+
+    public static final String MODE_POLL = "poll";
+
+    private static final PreAnalysisWatcher INSTANCE = new PreAnalysisWatcher();
+
+    private final Map<String, Registration> registrations = new ConcurrentHashMap<>();
+
+    private final Map<WatchKey, Registration> watchKeys = new ConcurrentHashMap<>();
+
+    /** polls the folders and drops idle registrations, null while no folder is registered */
+    private ScheduledExecutorService scheduler;
+
+    private WatchService watchService;
+
+    /**
+     * Create a watcher of its own, e.g. for tests. Within Goobi, the registering step and the analysis step must share the watcher of
+     * {@link #getInstance()}.
+     */
+    public PreAnalysisWatcher() {
+    }
+
+    public static PreAnalysisWatcher getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Start the background classification of a folder. Nothing happens, if the pre-analysis is disabled or the folder is already observed.
+     *
+     * @param folder the image folder
+     * @param configuration the current plugin configuration
+     */
+    public synchronized void watch(String folder, AnalyzerConfiguration configuration) {
+        String mode = configuration.getPreAnalysis();
+        if (MODE_OFF.equals(mode) || registrations.containsKey(folder)) {
+            return;
+        }
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "imagename-preanalyse-poll");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::removeIdle, 1, 1, TimeUnit.HOURS);
+        }
+        Registration registration = new Registration(new FolderPreAnalysis(folder, configuration),
+                TimeUnit.HOURS.toMillis(configuration.getPreAnalysisMaxIdleHours()));
+        registrations.put(folder, registration);
+
+        if (MODE_WATCH.equals(mode) && register(registration)) {
+            // get the files that existed before the folder was registered
+            scheduler.execute(() -> rescan(registration));
+        } else {
+            registration.poll = scheduler.scheduleWithFixedDelay(() -> rescan(registration), 0, configuration.getPreAnalysisPollInterval(),
+                    TimeUnit.SECONDS);
+        }
+        log.debug("Start pre-analysis of " + folder + " (" + mode + ")");
+    }
+
+    /**
+     * Stop the background classification of a folder and get its partial result
+     *
+     * @param folder the image folder
+     * @return the partial result, or null if the folder was not observed
+     */
+    public synchronized FolderPreAnalysis take(String folder) {
+        Registration registration = registrations.remove(folder);
+        if (registration == null) {
+            return null;
+        }
+        registration.stop();
+        stopIfUnused();
+        return registration.analysis;
+    }
+
+    /**
+     * @param folder the image folder
+     * @return true if the folder is observed
+     */
+    public boolean isWatched(String folder) {
+        return registrations.containsKey(folder);
+    }
+
+    /**
+     * @return true if the background threads are running
+     */
+    public synchronized boolean isRunning() {
+        return scheduler != null;
+    }
+
+    /**
+     * Stop all observations, e.g. when the plugin is unloaded. The watcher can be used again afterwards.
+     */
+    public synchronized void shutdown() {
+        for (Registration registration : registrations.values()) {
+            registration.stop();
+        }
+        registrations.clear();
+        stopIfUnused();
+    }
+
+    /**
+     * Stop the background threads, if no folder is registered anymore
+     */
+    private void stopIfUnused() {
+        if (!registrations.isEmpty() || scheduler == null) {
+            return;
+        }
+        scheduler.shutdownNow();
+        scheduler = null;
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                log.warn("Cannot close watch service", e);
+            }
+            watchService = null;
+        }
+        log.debug("No folders left to observe, pre-analysis threads stopped");
+    }
+
+    private boolean register(Registration registration) {
+        try {
+            if (watchService == null) {
+                WatchService service = FileSystems.getDefault().newWatchService();
+                watchService = service;
+                Thread thread = new Thread(() -> processEvents(service), "imagename-preanalyse-watch");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            registration.watchKey = Paths.get(registration.analysis.getFolder()).register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+            watchKeys.put(registration.watchKey, registration);
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            log.info("Cannot watch " + registration.analysis.getFolder() + ", poll it instead: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private void processEvents(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Registration registration = watchKeys.get(key);
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (registration == null) {
+                        continue;
+                    }
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        // events got lost, list the complete folder
+                        rescan(registration);
+                    } else {
+                        String imageName = ((Path) event.context()).getFileName().toString();
+                        if (imageName.startsWith(".")) {
+                            // temporary files of the upload
+                            continue;
+                        }
+                        if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+                            registration.analysis.add(imageName);
+                        } else {
+                            registration.analysis.remove(imageName);
+                        }
+                    }
+                }
+                if (!key.reset()) {
+                    // folder was deleted
+                    watchKeys.remove(key);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException e) {
+            // shutdown
+        }
+    }
+
+    private void rescan(Registration registration) {
+        String folder = registration.analysis.getFolder();
+        try {
+            registration.analysis.synchronize(StorageProvider.getInstance().list(folder));
+        } catch (RuntimeException e) {
+            // keep the registration, the next poll or the analysis step will try again
+            log.warn("Cannot list " + folder, e);
+        }
+    }
+
+    private synchronized void removeIdle() {
+        long now = System.currentTimeMillis();
+        Iterator<Registration> iterator = registrations.values().iterator();
+        while (iterator.hasNext()) {
+            Registration registration = iterator.next();
+            if (registration.maxIdleMillis > 0 && registration.analysis.getLastUpdate() < now - registration.maxIdleMillis) {
+                log.debug("Drop idle pre-analysis of " + registration.analysis.getFolder());
+                iterator.remove();
+                registration.stop();
+            }
+        }
+        stopIfUnused();
+    }
+
+    private class Registration {
+        private final FolderPreAnalysis analysis;
+        /** idle time after which the folder is dropped, 0 to keep it until it is taken */
+        private final long maxIdleMillis;
+        private WatchKey watchKey;
+        private ScheduledFuture<?> poll;
+
+        private Registration(FolderPreAnalysis analysis, long maxIdleMillis) {
+            this.analysis = analysis;
+            this.maxIdleMillis = maxIdleMillis;
+        }
+
+        private void stop() {
+            if (watchKey != null) {
+                watchKey.cancel();
+                watchKeys.remove(watchKey);
+            }
+            if (poll != null) {
+                poll.cancel(false);
+            }
+        }
+    }
+}
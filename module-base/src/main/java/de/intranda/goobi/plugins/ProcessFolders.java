@@ -0,0 +1,34 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.goobi.beans.Process;
+
+import de.sub.goobi.helper.exceptions.DAOException;
+import de.sub.goobi.helper.exceptions.SwapException;
+
+/**
+ * Resolves the folders of a process: the master image folder, the derivative folders and the folder for the files written by the plugin
+ */
+public interface ProcessFolders {
+
+    /**
+     * @param process the analysed process
+     * @return the master image folder
+     */
+    String getImageFolder(Process process) throws IOException, SwapException, DAOException;
+
+    /**
+     * @param process the analysed process
+     * @param name name of the folder in the configuration, e.g. media or jpeg
+     * @return the derivative folder
+     */
+    String getDerivativeFolder(Process process, String name) throws IOException, SwapException, DAOException;
+
+    /**
+     * @param process the analysed process
+     * @return the folder for the classification cache and the list of unmatched images, it may belong to any file system
+     */
+    Path getDataFolder(Process process) throws IOException, SwapException;
+}
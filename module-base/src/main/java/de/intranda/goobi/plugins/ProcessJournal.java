@@ -0,0 +1,19 @@
+package de.intranda.goobi.plugins;
+
+import org.goobi.beans.Process;
+import org.goobi.production.enums.LogType;
+
+/**
+ * Receives the messages of the plugin for the journal of a process
+ */
+public interface ProcessJournal {
+
+    /**
+     * Add a message to the journal of a process
+     *
+     * @param process the analysed process
+     * @param type type of the message
+     * @param message the message
+     */
+    void addMessage(Process process, LogType type, String message);
+}
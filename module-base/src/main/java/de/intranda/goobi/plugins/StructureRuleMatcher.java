@@ -0,0 +1,135 @@
+package de.intranda.goobi.plugins;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import lombok.Getter;
+
+/**
+ * Compiled form of the configured structureList. The fileparts are stored in a trie over their reversed characters, so an image name can be
+ * classified by walking backwards from the end of its base name once, instead of compiling and evaluating one regular expression per rule.
+ *
+ * A name matches a rule if it has the form <code>anything_FILEPART[digit][r|v].extension</code>, which is the same grammar as the former pattern
+ * <code>.*_FILEPART(\d?)[rv]?\.\w+</code>. If several fileparts match, the longest one wins, so the result does not depend on configuration or
+ * map ordering.
+ */
+public class StructureRuleMatcher {
+
+    private final Node root = new Node();
+
+    public StructureRuleMatcher(Map<String, String> rules) {
+        for (Map.Entry<String, String> rule : rules.entrySet()) {
+            addRule(rule.getKey(), rule.getValue());
+        }
+    }
+
+    private void addRule(String filepart, String docstruct) {
+        if (filepart == null || filepart.isEmpty()) {
+            return;
+        }
+        Node node = root;
+        for (int i = filepart.length() - 1; i >= 0; i--) {
+            node = node.children.computeIfAbsent(filepart.charAt(i), c -> new Node());
+        }
+        node.rule = new StructureMatch(filepart, docstruct, "");
+    }
+
+    /**
+     * Find the structure rule for the given image name
+     *
+     * @param imageName name of the image file
+     * @return the matching rule including the optional group number, or null if no rule matches
+     */
+    public StructureMatch match(String imageName) {
+        int extensionStart = imageName.lastIndexOf('.');
+        if (extensionStart < 0 || extensionStart == imageName.length() - 1) {
+            return null;
+        }
+        for (int i = extensionStart + 1; i < imageName.length(); i++) {
+            if (!isWordCharacter(imageName.charAt(i))) {
+                return null;
+            }
+        }
+
+        // the filepart can be followed by an optional digit and an optional r/v, check all possible end positions of the filepart
+        int end = extensionStart;
+        StructureMatch best = matchAt(imageName, end, "");
+        if (end > 0 && isAsciiDigit(imageName.charAt(end - 1))) {
+            best = longer(best, matchAt(imageName, end - 1, imageName.substring(end - 1, end)));
+        }
+        if (end > 0 && (imageName.charAt(end - 1) == 'r' || imageName.charAt(end - 1) == 'v')) {
+            best = longer(best, matchAt(imageName, end - 1, ""));
+            if (end > 1 && isAsciiDigit(imageName.charAt(end - 2))) {
+                best = longer(best, matchAt(imageName, end - 2, imageName.substring(end - 2, end - 1)));
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Walk the trie backwards from the given end position and return the longest filepart that is preceded by an underscore
+     */
+    private StructureMatch matchAt(String imageName, int end, String groupNumber) {
+        Node node = root;
+        StructureMatch found = null;
+        for (int i = end - 1; i > 0; i--) {
+            node = node.children.get(imageName.charAt(i));
+            if (node == null) {
+                break;
+            }
+            if (node.rule != null && imageName.charAt(i - 1) == '_') {
+                found = node.rule;
+            }
+        }
+        if (found == null) {
+            return null;
+        }
+        return groupNumber.isEmpty() ? found : new StructureMatch(found.getFilepart(), found.getDocstruct(), groupNumber);
+    }
+
+    private static StructureMatch longer(StructureMatch current, StructureMatch candidate) {
+        if (current == null) {
+            return candidate;
+        }
+        if (candidate == null) {
+            return current;
+        }
+        return candidate.getFilepart().length() > current.getFilepart().length() ? candidate : current;
+    }
+
+    private static boolean isAsciiDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isWordCharacter(char c) {
+        return isAsciiDigit(c) || c == '_' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static class Node {
+        private final Map<Character, Node> children = new HashMap<>();
+        private StructureMatch rule;
+    }
+
+    /**
+     * Result of a successful match: the configured filepart, the docstruct type and the group number (empty or a single digit)
+     */
+    @Getter
+    public static class StructureMatch {
+        private final String filepart;
+        private final String docstruct;
+        private final String groupNumber;
+
+        public StructureMatch(String filepart, String docstruct, String groupNumber) {
+            this.filepart = filepart;
+            this.docstruct = docstruct;
+            this.groupNumber = groupNumber;
+        }
+
+        /**
+         * @return the key used to collect all images of the same docstruct, e.g. VS2
+         */
+        public String getKey() {
+            return filepart + groupNumber;
+        }
+    }
+}
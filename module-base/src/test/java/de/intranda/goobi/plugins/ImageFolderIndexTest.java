@@ -0,0 +1,31 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ImageFolderIndexTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testReadListsOnlyRegularFiles() throws Exception {
+        Path folder = temporaryFolder.getRoot().toPath();
+        Files.createFile(folder.resolve("img_2.tif"));
+        Files.createFile(folder.resolve("img_10.tif"));
+        Files.createFile(folder.resolve(".hidden.tif"));
+        Files.createDirectory(folder.resolve("backup"));
+        Files.createDirectory(folder.resolve("thumbs.tif"));
+
+        assertEquals(Arrays.asList("img_10.tif", "img_2.tif"), ImageFolderIndex.read(folder, Collections.emptySet(), false));
+        assertEquals(Arrays.asList("img_2.tif", "img_10.tif"), ImageFolderIndex.read(folder, Collections.singleton("tif"), true));
+    }
+}
@@ -0,0 +1,306 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.goobi.beans.Process;
+import org.goobi.production.enums.LogType;
+import org.goobi.production.enums.PluginReturnValue;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ugh.dl.DocStruct;
+import ugh.dl.Prefs;
+
+/**
+ * Complete analyses of a single manuscript with in-memory folders, metadata file and journal. The written pagination is compared with golden
+ * files of the METS structure, run with <code>-Dgolden.update=true</code> to write them again after an intended change.
+ */
+public class ImageNameAnalyzerTest {
+
+    private static final String GOLDEN_FOLDER = "golden/";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Prefs prefs;
+
+    private Process process;
+
+    private List<String> listing;
+
+    private InMemoryFolderSource folderSource;
+
+    private InMemoryMetadataStore metadataStore;
+
+    private RecordingJournal journal;
+
+    @Before
+    public void setUp() throws Exception {
+        prefs = TestFixtures.prefs();
+        process = TestFixtures.process();
+        listing = TestFixtures.readListing(TestFixtures.LISTING_FILE);
+        folderSource = new InMemoryFolderSource();
+        folderSource.put(TestProcessFolders.IMAGE_FOLDER, listing);
+        metadataStore = new InMemoryMetadataStore(prefs);
+        journal = new RecordingJournal();
+    }
+
+    private ImageNameAnalyzer createAnalyzer(String... settings) throws Exception {
+        ImageNameAnalyzer analyzer = new ImageNameAnalyzer(TestFixtures.configuration(settings), metadataStore, journal,
+                new TestProcessFolders(temporaryFolder.getRoot().toPath()));
+        analyzer.setFolderSource(folderSource);
+        analyzer.setPreAnalysisWatcher(new PreAnalysisWatcher());
+        analyzer.setMetricsSink(metrics -> {
+        });
+        return analyzer;
+    }
+
+    @Test
+    public void testOrderByImageName() throws Exception {
+        assertEquals(PluginReturnValue.FINISH, createAnalyzer().run(process));
+
+        assertEquals(1, metadataStore.getWrites());
+        assertGolden("order_by_image_name.xml");
+        List<String> errors = journal.getMessages(LogType.ERROR);
+        assertEquals(1, errors.size());
+        assertEquals("no match found for 1 image(s): Cod_Guelf_1_notiz.tif", errors.get(0));
+    }
+
+    @Test
+    public void testOrderByDocstruct() throws Exception {
+        assertEquals(PluginReturnValue.FINISH, createAnalyzer("orderImagesByDocstruct", "true").run(process));
+
+        assertEquals(1, metadataStore.getWrites());
+        assertGolden("order_by_docstruct.xml");
+    }
+
+    @Test
+    public void testUnmatchedImagesFileIsRemovedWithoutUnmatchedImages() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("imagename_analyse_unmatched.txt");
+        assertEquals(PluginReturnValue.FINISH, createAnalyzer("writeUnmatchedImagesFile", "true").run(process));
+        assertEquals(Collections.singletonList("Cod_Guelf_1_notiz.tif"), Files.readAllLines(file, StandardCharsets.UTF_8));
+
+        List<String> matching = new ArrayList<>(listing);
+        matching.remove("Cod_Guelf_1_notiz.tif");
+        folderSource.put(TestProcessFolders.IMAGE_FOLDER, matching);
+        assertEquals(PluginReturnValue.FINISH, createAnalyzer("writeUnmatchedImagesFile", "true").run(process));
+
+        assertFalse(Files.exists(file));
+        assertEquals(1, journal.getMessages(LogType.ERROR).size());
+    }
+
+    @Test
+    public void testRepeatedRunReplacesPagination() throws Exception {
+        assertEquals(PluginReturnValue.FINISH, createAnalyzer().run(process));
+        assertEquals(PluginReturnValue.FINISH, createAnalyzer().run(process));
+
+        assertEquals(2, metadataStore.getWrites());
+        assertGolden("order_by_image_name.xml");
+    }
+
+    @Test
+    public void testSkipWhenDataExistsDoesNotListFolder() throws Exception {
+        assertEquals(PluginReturnValue.FINISH, createAnalyzer().run(process));
+        folderSource.put(TestProcessFolders.IMAGE_FOLDER, new ArrayList<>());
+
+        assertEquals(PluginReturnValue.FINISH, createAnalyzer("skipWhenDataExists", "true").run(process));
+
+        assertEquals(1, folderSource.getListings());
+        assertEquals(1, metadataStore.getWrites());
+        assertGolden("order_by_image_name.xml");
+    }
+
+    @Test
+    public void testEmptyFolder() throws Exception {
+        folderSource.put(TestProcessFolders.IMAGE_FOLDER, new ArrayList<>());
+
+        assertEquals(PluginReturnValue.ERROR, createAnalyzer().run(process));
+
+        assertEquals(0, metadataStore.getWrites());
+    }
+
+    @Test
+    public void testIncrementalUpdate() throws Exception {
+        List<String> first = new ArrayList<>(listing);
+        first.remove("Cod_Guelf_1_NS1v.tif");
+        folderSource.put(TestProcessFolders.IMAGE_FOLDER, first);
+        assertEquals(PluginReturnValue.FINISH, createAnalyzer().run(process));
+        DocStruct convertedPage = findPage("Cod_Guelf_1_0001r.tif");
+        DocStruct postscript = findDocstruct("Postscript");
+
+        // the second endsheet was removed, a folio converted, the first postscript completed and a second one added
+        List<String> second = new ArrayList<>(listing);
+        second.remove("Cod_Guelf_1_VS2r.tif");
+        second.remove("Cod_Guelf_1_VS2v.tif");
+        second.set(second.indexOf("Cod_Guelf_1_0001r.tif"), "Cod_Guelf_1_0001r.jpg");
+        second.add(second.indexOf("Cod_Guelf_1_SO.tif"), "Cod_Guelf_1_NS2r.tif");
+        folderSource.put(TestProcessFolders.IMAGE_FOLDER, second);
+        assertEquals(PluginReturnValue.FINISH, createAnalyzer("incrementalUpdate", "true").run(process));
+
+        assertEquals(2, metadataStore.getWrites());
+        List<DocStruct> pages = metadataStore.getDigitalDocument().getPhysicalDocStruct().getAllChildren();
+        assertEquals(second.size(), pages.size());
+        for (int i = 0; i < second.size(); i++) {
+            assertEquals("file://" + TestProcessFolders.IMAGE_FOLDER + second.get(i), pages.get(i).getAllContentFiles().get(0).getLocation());
+            assertEquals(String.valueOf(i + 1), pages.get(i).getAllMetadataByType(prefs.getMetadataTypeByName("physPageNumber")).get(0).getValue());
+        }
+        assertSame(convertedPage, findPage("Cod_Guelf_1_0001r.jpg"));
+
+        assertSame(postscript, findDocstruct("Postscript"));
+        assertEquals(2, postscript.getAllToReferences("logical_physical").size());
+        assertSame(findPage("Cod_Guelf_1_NS1v.tif"), postscript.getAllToReferences("logical_physical").get(1).getTarget());
+        assertEquals(2, countDocstructs("Postscript"));
+        assertEquals(1, countDocstructs("Endsheet"));
+        assertTrue(journal.getMessages(LogType.INFO).contains("docstructs without remaining images were removed: Endsheet"));
+    }
+
+    @Test
+    public void testIncrementalUpdateInsertsLikeFullRun() throws Exception {
+        // the first page of an endsheet and a whole postscript are added before existing pages and docstructs
+        List<String> first = new ArrayList<>(listing);
+        first.remove("Cod_Guelf_1_VS1r.tif");
+        first.remove("Cod_Guelf_1_NS1r.tif");
+        first.remove("Cod_Guelf_1_NS1v.tif");
+        folderSource.put(TestProcessFolders.IMAGE_FOLDER, first);
+        assertEquals(PluginReturnValue.FINISH, createAnalyzer().run(process));
+
+        folderSource.put(TestProcessFolders.IMAGE_FOLDER, listing);
+        assertEquals(PluginReturnValue.FINISH, createAnalyzer("incrementalUpdate", "true").run(process));
+
+        assertGolden("order_by_image_name.xml");
+    }
+
+    @Test
+    public void testCancelledAnalysisKeepsMetadata() throws Exception {
+        ImageNameAnalyzer analyzer = createAnalyzer();
+        analyzer.setFolderSource(foldername -> {
+            analyzer.cancel();
+            return folderSource.list(foldername);
+        });
+
+        assertEquals(PluginReturnValue.ERROR, analyzer.run(process));
+
+        assertEquals(0, metadataStore.getWrites());
+        assertNull(metadataStore.getDigitalDocument().getPhysicalDocStruct().getAllChildren());
+        List<String> messages = journal.getMessages(LogType.INFO);
+        assertEquals(1, messages.size());
+        assertTrue(messages.get(0), messages.get(0).contains("cancelled"));
+    }
+
+    @Test
+    public void testCrossCheckWithMatchingDerivatives() throws Exception {
+        List<String> derivatives = new ArrayList<>();
+        for (String imageName : listing) {
+            derivatives.add(imageName.replace(".tif", ".jpg"));
+        }
+        folderSource.put(TestProcessFolders.getDerivativeFolder("jpeg"), derivatives);
+
+        assertEquals(PluginReturnValue.FINISH, createAnalyzer("crossCheckFolder", "jpeg").run(process));
+
+        assertEquals(1, metadataStore.getWrites());
+        assertGolden("order_by_image_name.xml");
+    }
+
+    @Test
+    public void testCrossCheckWithMissingDerivative() throws Exception {
+        List<String> derivatives = new ArrayList<>(listing);
+        derivatives.remove("Cod_Guelf_1_0002v.tif");
+        folderSource.put(TestProcessFolders.getDerivativeFolder("jpeg"), derivatives);
+
+        assertEquals(PluginReturnValue.ERROR, createAnalyzer("crossCheckFolder", "jpeg").run(process));
+
+        assertEquals(0, metadataStore.getWrites());
+        List<String> errors = journal.getMessages(LogType.ERROR);
+        assertEquals(1, errors.size());
+        assertEquals("image folders do not match the master folder: jpeg: 1 missing (Cod_Guelf_1_0002v.tif);", errors.get(0));
+    }
+
+    @Test
+    public void testCrossCheckWithStreamingListingAndExtensions() throws Exception {
+        // the master folder contains a text file that is not listed, the derivative folder only jpg files
+        Path images = temporaryFolder.newFolder("images").toPath();
+        Path master = Files.createDirectory(images.resolve("test_media"));
+        Path derivative = Files.createDirectory(images.resolve("test_jpeg"));
+        for (String imageName : listing) {
+            Files.createFile(master.resolve(imageName));
+            Files.createFile(derivative.resolve(imageName.replace(".tif", ".jpg")));
+        }
+        Files.createFile(master.resolve("Cod_Guelf_1_notes.txt"));
+        ImageNameAnalyzer analyzer = new ImageNameAnalyzer(
+                TestFixtures.configuration("streamingListing", "true", "listingExtensions", "tif", "crossCheckFolder", "jpeg"), metadataStore,
+                journal, new TestProcessFolders(temporaryFolder.getRoot().toPath(), images.toString() + "/"));
+        analyzer.setPreAnalysisWatcher(new PreAnalysisWatcher());
+        analyzer.setMetricsSink(metrics -> {
+        });
+
+        assertEquals(PluginReturnValue.FINISH, analyzer.run(process));
+
+        assertEquals(1, metadataStore.getWrites());
+        assertEquals(listing.size(), metadataStore.getDigitalDocument().getPhysicalDocStruct().getAllChildren().size());
+        assertEquals(1, journal.getMessages(LogType.ERROR).size());
+    }
+
+    private DocStruct findPage(String imageName) throws Exception {
+        for (DocStruct page : metadataStore.getDigitalDocument().getPhysicalDocStruct().getAllChildren()) {
+            if (page.getAllContentFiles().get(0).getLocation().endsWith("/" + imageName)) {
+                return page;
+            }
+        }
+        throw new AssertionError("no page for " + imageName);
+    }
+
+    private DocStruct findDocstruct(String type) throws Exception {
+        for (DocStruct ds : metadataStore.getDigitalDocument().getLogicalDocStruct().getAllChildren()) {
+            if (ds.getType().getName().equals(type)) {
+                return ds;
+            }
+        }
+        throw new AssertionError("no docstruct " + type);
+    }
+
+    private int countDocstructs(String type) throws Exception {
+        int count = 0;
+        for (DocStruct ds : metadataStore.getDigitalDocument().getLogicalDocStruct().getAllChildren()) {
+            if (ds.getType().getName().equals(type)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private void assertGolden(String name) throws Exception {
+        String actual = MetsStructureWriter.write(metadataStore.getDigitalDocument(), prefs);
+        if (Boolean.getBoolean("golden.update")) {
+            Path golden = Paths.get("src/test/resources", GOLDEN_FOLDER, name);
+            Files.createDirectories(golden.getParent());
+            Files.write(golden, actual.getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        assertEquals(name, readGolden(name), actual);
+    }
+
+    private static String readGolden(String name) throws IOException {
+        try (InputStream in = ImageNameAnalyzerTest.class.getResourceAsStream("/" + GOLDEN_FOLDER + name)) {
+            if (in == null) {
+                throw new AssertionError("golden file " + name + " is missing, run the test with -Dgolden.update=true");
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
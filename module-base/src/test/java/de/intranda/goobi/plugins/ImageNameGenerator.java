@@ -0,0 +1,84 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Creates synthetic folder listings. Each listing is a sequence of digitised volumes of up to {@value #VOLUME_SIZE} images with their own
+ * prefix: covers, pastedowns and endsheets at the beginning, followed by recto/verso folios, back endsheets, covers, edges, color charts and
+ * fragments. The group number of a structure part has a single digit, so the share of special names is reached by adding volumes instead of
+ * numbering the parts of one volume further. About one name in twelve belongs to a structure rule and one name in a thousand does not match any
+ * rule, regardless of the size.
+ */
+public final class ImageNameGenerator {
+
+    static final int VOLUME_SIZE = 1000;
+
+    private static final List<String> FRONT_PARTS = new ArrayList<>();
+
+    private static final List<String> BACK_PARTS = new ArrayList<>();
+
+    static {
+        FRONT_PARTS.add("VD");
+        FRONT_PARTS.add("VDS");
+        addSheets(FRONT_PARTS, "VS");
+        addSheets(BACK_PARTS, "NS");
+        Collections.addAll(BACK_PARTS, "HDS", "HD", "ER", "SO", "SU", "SV");
+        for (String part : new String[] { "Farbkarte", "Farbkarte_Buchblock", "Farbkarte_Bucheinband", "FR" }) {
+            for (int group = 1; group <= 9; group++) {
+                BACK_PARTS.add(part + group);
+            }
+        }
+    }
+
+    private ImageNameGenerator() {
+    }
+
+    private static void addSheets(List<String> parts, String filepart) {
+        for (int group = 1; group <= 9; group++) {
+            parts.add(filepart + group + "r");
+            parts.add(filepart + group + "v");
+        }
+    }
+
+    /**
+     * Generate an ordered list of image names
+     *
+     * @param size number of names
+     * @param seed seed for the random distribution of unmatched names
+     * @return the listing
+     */
+    public static List<String> generate(int size, long seed) {
+        Random random = new Random(seed);
+        int signature = 100 + random.nextInt(900);
+        List<String> names = new ArrayList<>(size);
+        for (int volume = 1; names.size() < size; volume++) {
+            addVolume(names, "Cod_Guelf_" + signature + "_" + volume + "_", Math.min(VOLUME_SIZE, size - names.size()), random);
+        }
+        return names;
+    }
+
+    private static void addVolume(List<String> names, String prefix, int size, Random random) {
+        int special = size / 12;
+        int front = Math.min(special / 4, FRONT_PARTS.size());
+        int back = Math.min(special - front, BACK_PARTS.size());
+        int folios = size - front - back;
+
+        for (int i = 0; i < front; i++) {
+            names.add(prefix + FRONT_PARTS.get(i) + ".tif");
+        }
+        for (int i = 0; i < folios; i++) {
+            if (random.nextInt(1000) == 0) {
+                names.add(prefix + "scan" + i + ".tif");
+            } else {
+                int folio = i / 2 + 1;
+                names.add(prefix + String.format("%04d", folio) + (i % 2 == 0 ? "r" : "v") + ".tif");
+            }
+        }
+        for (int i = 0; i < back; i++) {
+            names.add(prefix + BACK_PARTS.get(i) + ".tif");
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Image folders held in memory. The derivative folders of a cross-check are listed in the background, so the source is thread-safe.
+ */
+class InMemoryFolderSource implements ImageFolderSource {
+
+    private final Map<String, List<String>> folders = new ConcurrentHashMap<>();
+
+    private final AtomicInteger listings = new AtomicInteger();
+
+    /**
+     * @param foldername the image folder
+     * @param imageNames the image names in folder order
+     */
+    void put(String foldername, List<String> imageNames) {
+        folders.put(foldername, new ArrayList<>(imageNames));
+    }
+
+    @Override
+    public List<String> list(String foldername) throws IOException {
+        listings.incrementAndGet();
+        List<String> imageNames = folders.get(foldername);
+        if (imageNames == null) {
+            throw new NoSuchFileException(foldername);
+        }
+        return new ArrayList<>(imageNames);
+    }
+
+    /**
+     * @return number of listed folders, including derivative folders
+     */
+    int getListings() {
+        return listings.get();
+    }
+}
@@ -0,0 +1,79 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.goobi.beans.Process;
+
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.FileSet;
+import ugh.dl.Fileformat;
+import ugh.dl.Prefs;
+import ugh.exceptions.PreferencesException;
+import ugh.exceptions.TypeNotAllowedForParentException;
+import ugh.fileformats.mets.MetsMods;
+
+/**
+ * Metadata file of a single process held in memory. A new store contains a monograph without pages. The store hands out the document it holds, so
+ * the tests can inspect the written pagination.
+ */
+class InMemoryMetadataStore implements MetadataStore {
+
+    private final Prefs prefs;
+
+    private Fileformat fileformat;
+
+    private int reads;
+
+    private int writes;
+
+    InMemoryMetadataStore(Prefs prefs) throws PreferencesException, TypeNotAllowedForParentException {
+        this.prefs = prefs;
+        fileformat = new MetsMods(prefs);
+        DigitalDocument digDoc = new DigitalDocument();
+        digDoc.setFileSet(new FileSet());
+        digDoc.setLogicalDocStruct(digDoc.createDocStruct(prefs.getDocStrctTypeByName("Monograph")));
+        digDoc.setPhysicalDocStruct(digDoc.createDocStruct(prefs.getDocStrctTypeByName("BoundBook")));
+        fileformat.setDigitalDocument(digDoc);
+    }
+
+    @Override
+    public Prefs getPreferences(Process process) {
+        return prefs;
+    }
+
+    @Override
+    public boolean containsPages(Process process) throws IOException {
+        try {
+            List<DocStruct> pages = fileformat.getDigitalDocument().getPhysicalDocStruct().getAllChildren();
+            return pages != null && !pages.isEmpty();
+        } catch (PreferencesException e) {
+            throw new IOException(e);
+        }
+    }
+
+    @Override
+    public Fileformat read(Process process) {
+        reads++;
+        return fileformat;
+    }
+
+    @Override
+    public void write(Process process, Fileformat fileformat) {
+        writes++;
+        this.fileformat = fileformat;
+    }
+
+    DigitalDocument getDigitalDocument() throws PreferencesException {
+        return fileformat.getDigitalDocument();
+    }
+
+    int getReads() {
+        return reads;
+    }
+
+    int getWrites() {
+        return writes;
+    }
+}
@@ -0,0 +1,226 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.goobi.beans.Process;
+import org.goobi.production.enums.LogType;
+import org.goobi.production.enums.PluginReturnValue;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameter;
+import org.junit.runners.Parameterized.Parameters;
+
+import de.intranda.goobi.plugins.StructureRuleMatcher.StructureMatch;
+import ugh.dl.DocStruct;
+import ugh.dl.MetadataType;
+import ugh.dl.Prefs;
+import ugh.dl.Reference;
+
+/**
+ * Complete analyses of generated folders, each checked against the invariants of a pagination. By default, only a small folder is analysed. With
+ * the system property <code>imagename.test.budgets=true</code>, set by the benchmark profile, folders of up to 100,000 images are analysed and
+ * checked against a time and an allocation budget per image. The budgets can be changed with the system properties
+ * <code>imagename.test.timeBudgetMicrosPerImage</code> and <code>imagename.test.allocationBudgetBytesPerImage</code>.
+ */
+@RunWith(Parameterized.class)
+public class LargeFolderTest {
+
+    private static final boolean BUDGETS = Boolean.getBoolean("imagename.test.budgets");
+
+    private static final long TIME_BUDGET_MICROS_PER_IMAGE = Long.getLong("imagename.test.timeBudgetMicrosPerImage", 300);
+
+    /** small folders are dominated by the warm-up of the JVM */
+    private static final long MIN_TIME_BUDGET_MILLIS = 2000;
+
+    private static final long ALLOCATION_BUDGET_BYTES_PER_IMAGE = Long.getLong("imagename.test.allocationBudgetBytesPerImage", 16384);
+
+    @Parameters(name = "{0} images, orderImagesByDocstruct={1}")
+    public static Collection<Object[]> parameters() {
+        List<Object[]> parameters = new ArrayList<>();
+        for (int size : BUDGETS ? new int[] { 1000, 10000, 100000 } : new int[] { 1000 }) {
+            parameters.add(new Object[] { size, false });
+            parameters.add(new Object[] { size, true });
+        }
+        return parameters;
+    }
+
+    @Parameter(0)
+    public int size;
+
+    @Parameter(1)
+    public boolean orderImagesByDocstruct;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private InMemoryMetadataStore metadataStore;
+
+    private RecordingJournal journal;
+
+    private ImageNameAnalyzer createAnalyzer(List<String> imageNames, String... settings) throws Exception {
+        List<String> allSettings = new ArrayList<>();
+        allSettings.add("orderImagesByDocstruct");
+        allSettings.add(String.valueOf(orderImagesByDocstruct));
+        for (String setting : settings) {
+            allSettings.add(setting);
+        }
+        metadataStore = new InMemoryMetadataStore(TestFixtures.prefs());
+        journal = new RecordingJournal();
+        InMemoryFolderSource folderSource = new InMemoryFolderSource();
+        folderSource.put(TestProcessFolders.IMAGE_FOLDER, imageNames);
+
+        ImageNameAnalyzer analyzer = new ImageNameAnalyzer(TestFixtures.configuration(allSettings.toArray(new String[allSettings.size()])),
+                metadataStore, journal, new TestProcessFolders(temporaryFolder.getRoot().toPath()));
+        analyzer.setFolderSource(folderSource);
+        analyzer.setPreAnalysisWatcher(new PreAnalysisWatcher());
+        analyzer.setMetricsSink(metrics -> {
+        });
+        return analyzer;
+    }
+
+    @Test
+    public void testPagination() throws Exception {
+        List<String> imageNames = TestFixtures.generateListing(size);
+        ImageNameAnalyzer analyzer = createAnalyzer(imageNames);
+
+        assertEquals(PluginReturnValue.FINISH, analyzer.run(TestFixtures.process()));
+
+        assertPagination(analyzer.getConfiguration(), imageNames);
+    }
+
+    @Test
+    public void testPaginationWithinTimeBudget() throws Exception {
+        assumeTrue(BUDGETS);
+        List<String> imageNames = TestFixtures.generateListing(size);
+        ImageNameAnalyzer analyzer = createAnalyzer(imageNames);
+        Process process = TestFixtures.process();
+
+        long start = System.nanoTime();
+        PluginReturnValue result = analyzer.run(process);
+        long millis = (System.nanoTime() - start) / 1000000;
+
+        assertEquals(PluginReturnValue.FINISH, result);
+        long budget = Math.max(MIN_TIME_BUDGET_MILLIS, size * TIME_BUDGET_MICROS_PER_IMAGE / 1000);
+        assertTrue(size + " images took " + millis + " ms, budget " + budget + " ms", millis <= budget);
+    }
+
+    @Test
+    public void testPaginationWithinAllocationBudget() throws Exception {
+        assumeTrue(BUDGETS);
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+        List<String> imageNames = TestFixtures.generateListing(size);
+        // all work has to happen in the current thread to be measured
+        ImageNameAnalyzer analyzer = createAnalyzer(imageNames, "parallelClassificationThreshold", "0");
+        Process process = TestFixtures.process();
+        long threadId = Thread.currentThread().getId();
+
+        long allocated = threads.getThreadAllocatedBytes(threadId);
+        PluginReturnValue result = analyzer.run(process);
+        allocated = threads.getThreadAllocatedBytes(threadId) - allocated;
+
+        assertEquals(PluginReturnValue.FINISH, result);
+        long budget = size * ALLOCATION_BUDGET_BYTES_PER_IMAGE;
+        assertTrue(size + " images allocated " + allocated / size + " bytes per image, budget " + ALLOCATION_BUDGET_BYTES_PER_IMAGE,
+                allocated <= budget);
+    }
+
+    /**
+     * Check the invariants of a written pagination: every image has a page with its file, the physical page numbers are 1 to n in the order of the
+     * logical references, each structure page belongs to exactly one docstruct of its rule and, if ordered by docstruct, the docstructs follow the
+     * configured order.
+     */
+    private void assertPagination(AnalyzerConfiguration configuration, List<String> imageNames) throws Exception {
+        assertEquals(1, metadataStore.getWrites());
+        Prefs prefs = TestFixtures.prefs();
+        MetadataType physType = prefs.getMetadataTypeByName("physPageNumber");
+        DocStruct logical = metadataStore.getDigitalDocument().getLogicalDocStruct();
+        // UGH keeps children and references in linked lists, copy them for the indexed access
+        List<DocStruct> pages = new ArrayList<>(metadataStore.getDigitalDocument().getPhysicalDocStruct().getAllChildren());
+        assertEquals(imageNames.size(), pages.size());
+        for (int i = 0; i < pages.size(); i++) {
+            assertEquals("file://" + TestProcessFolders.IMAGE_FOLDER + imageNames.get(i), pages.get(i).getAllContentFiles().get(0).getLocation());
+        }
+
+        // the logical references are ordered by the physical page numbers, which are 1 to n without gaps
+        List<Reference> references = new ArrayList<>(logical.getAllToReferences("logical_physical"));
+        assertEquals(pages.size(), references.size());
+        Map<DocStruct, Boolean> referenced = new IdentityHashMap<>();
+        for (int i = 0; i < references.size(); i++) {
+            DocStruct page = references.get(i).getTarget();
+            assertNull("page referenced twice", referenced.put(page, Boolean.TRUE));
+            assertEquals(String.valueOf(i + 1), page.getAllMetadataByType(physType).get(0).getValue());
+        }
+        if (!orderImagesByDocstruct) {
+            assertSame(pages.get(pages.size() - 1), references.get(references.size() - 1).getTarget());
+        }
+
+        // each page belongs to at most one docstruct, structure pages to a docstruct of their rule
+        ImageClassifier classifier = new ImageClassifier(configuration);
+        Map<DocStruct, DocStruct> docstructOfPage = new IdentityHashMap<>();
+        List<DocStruct> children = logical.getAllChildren();
+        Map<DocStruct, Integer> pageIndex = new IdentityHashMap<>();
+        for (int i = 0; i < pages.size(); i++) {
+            pageIndex.put(pages.get(i), i);
+        }
+        for (DocStruct child : children) {
+            for (Reference reference : child.getAllToReferences("logical_physical")) {
+                assertNull("page in two docstructs", docstructOfPage.put(reference.getTarget(), child));
+            }
+        }
+        int unmatched = 0;
+        for (int i = 0; i < pages.size(); i++) {
+            ImageClassification classification = classifier.classify(imageNames.get(i));
+            StructureMatch structureMatch = classification.getStructureMatch();
+            DocStruct docstruct = docstructOfPage.get(pages.get(i));
+            if (structureMatch != null) {
+                assertEquals(imageNames.get(i), structureMatch.getDocstruct(), docstruct.getType().getName());
+            } else if (orderImagesByDocstruct) {
+                assertEquals(imageNames.get(i), DryRunReport.TEXTBLOCK, docstruct.getType().getName());
+            } else {
+                assertNull(imageNames.get(i), docstruct);
+            }
+            if (classification.isUnmatched()) {
+                unmatched++;
+            }
+        }
+        List<String> errors = journal.getMessages(LogType.ERROR);
+        assertEquals(unmatched == 0 ? 0 : 1, errors.size());
+        if (unmatched > 0) {
+            assertTrue(errors.get(0), errors.get(0).startsWith("no match found for " + unmatched + " image(s): "));
+        }
+
+        if (orderImagesByDocstruct) {
+            DocstructOrder order = configuration.getDocstructOrder();
+            int lastRank = -1;
+            for (DocStruct child : children) {
+                int rank;
+                if (DryRunReport.TEXTBLOCK.equals(child.getType().getName())) {
+                    rank = order.getTextblockRank();
+                } else {
+                    String imageName = imageNames.get(pageIndex.get(child.getAllToReferences("logical_physical").get(0).getTarget()));
+                    rank = order.getRank(classifier.classify(imageName).getStructureMatch().getFilepart());
+                }
+                assertTrue(child.getType().getName() + " out of order", rank >= lastRank);
+                lastRank = rank;
+            }
+        }
+    }
+}
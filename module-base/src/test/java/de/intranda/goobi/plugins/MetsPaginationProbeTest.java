@@ -0,0 +1,73 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ugh.dl.DigitalDocument;
+import ugh.dl.FileSet;
+import ugh.dl.Fileformat;
+import ugh.dl.Prefs;
+import ugh.fileformats.mets.MetsMods;
+
+/**
+ * Probes METS files written by UGH. The logical structMap contains nested divs as well, only divs below the root of the physical structMap are
+ * pages.
+ */
+public class MetsPaginationProbeTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Prefs prefs;
+
+    private DigitalDocument digDoc;
+
+    @Before
+    public void setUp() throws Exception {
+        prefs = TestFixtures.prefs();
+        digDoc = new InMemoryMetadataStore(prefs).getDigitalDocument();
+        digDoc.getLogicalDocStruct().addChild(digDoc.createDocStruct(prefs.getDocStrctTypeByName("FrontCover")));
+    }
+
+    @Test
+    public void testPhysicalStructMapWithPages() throws Exception {
+        AnalyzerConfiguration configuration = TestFixtures.configuration();
+        new PaginationBuilder(configuration, prefs).assemble(digDoc, digDoc.getPhysicalDocStruct(), digDoc.getLogicalDocStruct(),
+                TestProcessFolders.IMAGE_FOLDER, new ImageClassifier(configuration).classifyAll(TestFixtures.readListing(TestFixtures.LISTING_FILE)));
+
+        assertTrue(probe(digDoc));
+    }
+
+    @Test
+    public void testPhysicalStructMapWithoutPages() throws Exception {
+        assertFalse(probe(digDoc));
+    }
+
+    @Test
+    public void testLogicalStructMapOnly() throws Exception {
+        DigitalDocument logicalOnly = new DigitalDocument();
+        logicalOnly.setFileSet(new FileSet());
+        logicalOnly.setLogicalDocStruct(digDoc.getLogicalDocStruct());
+
+        assertFalse(probe(logicalOnly));
+    }
+
+    private boolean probe(DigitalDocument document) throws Exception {
+        Path metsFile = temporaryFolder.newFile("meta.xml").toPath();
+        Fileformat fileformat = new MetsMods(prefs);
+        fileformat.setDigitalDocument(document);
+        fileformat.write(metsFile.toString());
+        try (InputStream in = Files.newInputStream(metsFile)) {
+            return MetsPaginationProbe.containsPages(in);
+        }
+    }
+}
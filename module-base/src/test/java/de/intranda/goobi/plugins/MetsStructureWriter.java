@@ -0,0 +1,133 @@
+package de.intranda.goobi.plugins;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ugh.dl.ContentFile;
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.Metadata;
+import ugh.dl.MetadataType;
+import ugh.dl.Prefs;
+import ugh.dl.Reference;
+
+/**
+ * Renders the sections of a METS file that hold the pagination: file section, logical and physical structMap and structLink. The header, the
+ * descriptive metadata and the time stamps written by UGH are left out, so the result only depends on the pagination and can be compared with a
+ * golden file.
+ */
+final class MetsStructureWriter {
+
+    private static final String INDENT = "    ";
+
+    private MetsStructureWriter() {
+    }
+
+    /**
+     * @param digDoc the document to render
+     * @param prefs the ruleset of the document
+     * @return the METS sections of the pagination
+     */
+    static String write(DigitalDocument digDoc, Prefs prefs) {
+        MetadataType physType = prefs.getMetadataTypeByName("physPageNumber");
+        MetadataType logType = prefs.getMetadataTypeByName("logicalPageNumber");
+        List<DocStruct> pages = digDoc.getPhysicalDocStruct().getAllChildren();
+        Map<DocStruct, String> pageIds = new IdentityHashMap<>();
+        if (pages != null) {
+            for (DocStruct page : pages) {
+                pageIds.put(page, String.format("PHYS_%04d", pageIds.size() + 1));
+            }
+        }
+
+        StringBuilder mets = new StringBuilder();
+        mets.append("<mets:mets xmlns:mets=\"http://www.loc.gov/METS/\" xmlns:xlink=\"http://www.w3.org/1999/xlink\">\n");
+        line(mets, 1, "<mets:fileSec>");
+        line(mets, 2, "<mets:fileGrp USE=\"LOCAL\">");
+        if (pages != null) {
+            for (DocStruct page : pages) {
+                List<ContentFile> files = page.getAllContentFiles();
+                String location = files == null || files.isEmpty() ? "" : files.get(0).getLocation();
+                line(mets, 3, "<mets:file ID=\"" + fileId(pageIds.get(page)) + "\">");
+                line(mets, 4, "<mets:FLocat LOCTYPE=\"URL\" xlink:href=\"" + escape(location) + "\"/>");
+                line(mets, 3, "</mets:file>");
+            }
+        }
+        line(mets, 2, "</mets:fileGrp>");
+        line(mets, 1, "</mets:fileSec>");
+
+        Map<DocStruct, String> logicalIds = new IdentityHashMap<>();
+        line(mets, 1, "<mets:structMap TYPE=\"LOGICAL\">");
+        writeLogical(mets, digDoc.getLogicalDocStruct(), logicalIds, 2);
+        line(mets, 1, "</mets:structMap>");
+
+        DocStruct physical = digDoc.getPhysicalDocStruct();
+        line(mets, 1, "<mets:structMap TYPE=\"PHYSICAL\">");
+        line(mets, 2, "<mets:div ID=\"PHYS_0000\" TYPE=\"" + physical.getType().getName() + "\">");
+        if (pages != null) {
+            for (DocStruct page : pages) {
+                String id = pageIds.get(page);
+                line(mets, 3, "<mets:div ID=\"" + id + "\" ORDER=\"" + escape(getValue(page, physType)) + "\" ORDERLABEL=\""
+                        + escape(getValue(page, logType)) + "\" TYPE=\"" + page.getType().getName() + "\">");
+                line(mets, 4, "<mets:fptr FILEID=\"" + fileId(id) + "\"/>");
+                line(mets, 3, "</mets:div>");
+            }
+        }
+        line(mets, 2, "</mets:div>");
+        line(mets, 1, "</mets:structMap>");
+
+        line(mets, 1, "<mets:structLink>");
+        writeLinks(mets, digDoc.getLogicalDocStruct(), logicalIds, pageIds);
+        line(mets, 1, "</mets:structLink>");
+        mets.append("</mets:mets>\n");
+        return mets.toString();
+    }
+
+    private static void writeLogical(StringBuilder mets, DocStruct ds, Map<DocStruct, String> logicalIds, int depth) {
+        String id = String.format("LOG_%04d", logicalIds.size());
+        logicalIds.put(ds, id);
+        List<DocStruct> children = ds.getAllChildren();
+        if (children == null || children.isEmpty()) {
+            line(mets, depth, "<mets:div ID=\"" + id + "\" TYPE=\"" + ds.getType().getName() + "\"/>");
+            return;
+        }
+        line(mets, depth, "<mets:div ID=\"" + id + "\" TYPE=\"" + ds.getType().getName() + "\">");
+        for (DocStruct child : children) {
+            writeLogical(mets, child, logicalIds, depth + 1);
+        }
+        line(mets, depth, "</mets:div>");
+    }
+
+    private static void writeLinks(StringBuilder mets, DocStruct ds, Map<DocStruct, String> logicalIds, Map<DocStruct, String> pageIds) {
+        for (Reference reference : ds.getAllToReferences("logical_physical")) {
+            String pageId = pageIds.get(reference.getTarget());
+            line(mets, 2, "<mets:smLink xlink:from=\"" + logicalIds.get(ds) + "\" xlink:to=\"" + (pageId == null ? "UNKNOWN" : pageId) + "\"/>");
+        }
+        List<DocStruct> children = ds.getAllChildren();
+        if (children != null) {
+            for (DocStruct child : children) {
+                writeLinks(mets, child, logicalIds, pageIds);
+            }
+        }
+    }
+
+    private static String getValue(DocStruct page, MetadataType type) {
+        List<? extends Metadata> metadata = page.getAllMetadataByType(type);
+        return metadata == null || metadata.isEmpty() ? "" : metadata.get(0).getValue();
+    }
+
+    private static String fileId(String pageId) {
+        return "FILE_" + pageId.substring("PHYS_".length());
+    }
+
+    private static void line(StringBuilder mets, int depth, String text) {
+        for (int i = 0; i < depth; i++) {
+            mets.append(INDENT);
+        }
+        mets.append(text).append('\n');
+    }
+
+    private static String escape(String value) {
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace("\"", "&quot;");
+    }
+}
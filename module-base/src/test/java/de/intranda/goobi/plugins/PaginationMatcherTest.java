@@ -0,0 +1,111 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+public class PaginationMatcherTest {
+
+    private static final String DEFAULT_PATTERN = ".*_0?0?(\\d+\\w?[rv]\\w?)\\.\\w+";
+
+    private static final long BUDGET = 100000;
+
+    private static List<String> corpus() throws Exception {
+        List<String> names = new ArrayList<>(TestFixtures.readListing(TestFixtures.LISTING_FILE));
+        names.addAll(TestFixtures.generateListing(500));
+        names.addAll(Arrays.asList("Cod_001r.tif", "Cod_001r", "Cod_001r.", "Cod_001r.ti-f", "Cod_001r.tif.bak", "Cod.1_002v.tif", "Cod_1.2_003r.tif",
+                "001r.tif", "_001r.tif", "Cod__001r.tif", "Cod_001r_x.tif", "Cod_x_001r.tif", "Cod_A.tif", "B.tif", "Cod_B.tif", "Cod_A|B.tif",
+                "A_12.tif", "A_B_12.tif", "A_1B.tif", "Cod_VS1r.tif", "Cod_NS2v_a.jpg", "Cod_Farbkarte_Buchblock.tif", "Cod_12ra.tif",
+                "Cod_0012rb.tif", "Cod_012xv.tif", "Cod_$1r.tif", "Cod_^1r.tif"));
+        return names;
+    }
+
+    private static String expected(Pattern pattern, String name) {
+        Matcher matcher = pattern.matcher(name);
+        if (!matcher.matches()) {
+            return null;
+        }
+        return matcher.groupCount() > 0 ? matcher.group(1) : matcher.group();
+    }
+
+    private static void assertSameAsPattern(String regex, boolean suffixAnchored) throws Exception {
+        Pattern pattern = Pattern.compile(regex);
+        PaginationMatcher matcher = new PaginationMatcher(pattern, BUDGET);
+        assertEquals(regex, suffixAnchored, matcher.isSuffixAnchored());
+        for (String name : corpus()) {
+            assertEquals(regex + " on " + name, expected(pattern, name), matcher.match(name));
+        }
+    }
+
+    @Test
+    public void testDefaultPattern() throws Exception {
+        assertSameAsPattern(DEFAULT_PATTERN, true);
+    }
+
+    @Test
+    public void testReducedCustomPatterns() throws Exception {
+        assertSameAsPattern(".*_(\\d+)\\.\\w+", true);
+        assertSameAsPattern(".*_(\\d+|[A-Z]+)\\.\\w+", true);
+        assertSameAsPattern(".*_([A-Z][a-z]*_[A-Z][a-z]*)\\.\\w+", true);
+        assertSameAsPattern(".*_(?<page>\\d+[rv])\\w?\\.\\w+", true);
+        assertSameAsPattern(".*_[^_]*?(\\d+)\\.\\w+", true);
+        assertSameAsPattern(".*_A\\.\\w+", true);
+    }
+
+    @Test
+    public void testPatternsEvaluatedAsTheyAre() throws Exception {
+        // top-level alternative: (.*_A)|(B\.\w+)
+        assertSameAsPattern(".*_A|B\\.\\w+", false);
+        assertSameAsPattern(".*_(\\d+)|[A-Z]+\\.\\w+", false);
+        // lookbehind and lookahead see the characters around the segment
+        assertSameAsPattern(".*_(?<=_)(\\d+)\\.\\w+", false);
+        assertSameAsPattern(".*_(?<!Cod_)(\\d+[rv])\\.\\w+", false);
+        assertSameAsPattern(".*_(\\d+)(?=\\.)\\.\\w+", false);
+        // anchors and word boundaries
+        assertSameAsPattern(".*_\\b(\\d+[rv])\\.\\w+", false);
+        assertSameAsPattern(".*_^(\\d+[rv])\\.\\w+", false);
+        assertSameAsPattern(".*_(\\d+[rv])$\\.\\w+", false);
+        // the segment can consume a dot
+        assertSameAsPattern(".*_(.+)\\.\\w+", false);
+        // not of the reducible form
+        assertSameAsPattern("(\\d+[rv])", false);
+        assertSameAsPattern(".*_(\\d+[rv]).*", false);
+    }
+
+    @Test
+    public void testAlternativesWithinClassesAndEscapes() throws Exception {
+        assertSameAsPattern(".*_([|\\d]+)\\.\\w+", true);
+        assertSameAsPattern(".*_(\\||\\d+)\\.\\w+", true);
+        assertSameAsPattern(".*_([$^]?\\d+[rv])\\.\\w+", true);
+    }
+
+    @Test
+    public void testBudgetExceeded() {
+        String name = "Cod_" + String.join("", Collections.nCopies(30, "a")) + ".tif";
+
+        // the reduced segment backtracks catastrophically
+        PaginationMatcher reduced = new PaginationMatcher(Pattern.compile(".*_(a+)+b\\.\\w+"), BUDGET);
+        assertTrue(reduced.isSuffixAnchored());
+        assertNull(reduced.match(name));
+
+        PaginationMatcher full = new PaginationMatcher(Pattern.compile("(a|aa)+b"), BUDGET);
+        assertFalse(full.isSuffixAnchored());
+        assertNull(full.match(String.join("", Collections.nCopies(40, "a"))));
+
+        // a matching name is treated as not matching once the budget is used up
+        PaginationMatcher tiny = new PaginationMatcher(Pattern.compile(DEFAULT_PATTERN), 3);
+        assertNull(tiny.match("Cod_001r.tif"));
+        assertNotNull(new PaginationMatcher(Pattern.compile(DEFAULT_PATTERN), BUDGET).match("Cod_001r.tif"));
+    }
+}
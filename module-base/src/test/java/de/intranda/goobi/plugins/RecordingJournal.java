@@ -0,0 +1,41 @@
+package de.intranda.goobi.plugins;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.goobi.beans.Process;
+import org.goobi.production.enums.LogType;
+
+/**
+ * Collects the journal entries of all processes
+ */
+class RecordingJournal implements ProcessJournal {
+
+    private final List<LogType> types = new ArrayList<>();
+
+    private final List<String> messages = new ArrayList<>();
+
+    @Override
+    public synchronized void addMessage(Process process, LogType type, String message) {
+        types.add(type);
+        messages.add(message);
+    }
+
+    /**
+     * @param type type of the entries
+     * @return the messages of all entries of this type
+     */
+    synchronized List<String> getMessages(LogType type) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < types.size(); i++) {
+            if (types.get(i) == type) {
+                result.add(messages.get(i));
+            }
+        }
+        return result;
+    }
+
+    synchronized int size() {
+        return messages.size();
+    }
+}
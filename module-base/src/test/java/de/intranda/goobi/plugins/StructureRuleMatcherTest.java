@@ -0,0 +1,94 @@
+package de.intranda.goobi.plugins;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import de.intranda.goobi.plugins.StructureRuleMatcher.StructureMatch;
+
+public class StructureRuleMatcherTest {
+
+    private static final String[][] RULES = { { "VD", "FrontCover" }, { "VDS", "BuchspiegelVorne" }, { "VS", "Endsheet" },
+            { "Farbkarte", "ColorChart" }, { "Farbkarte_Buchblock", "ColorChartBookBlock" }, { "Farbkarte_Bucheinband", "ColorChartBinding" } };
+
+    /**
+     * @return matchers with the rules in configuration order and in reverse order, the result must not depend on it
+     */
+    private static List<StructureRuleMatcher> matchers() {
+        List<String[]> rules = new ArrayList<>(Arrays.asList(RULES));
+        Map<String, String> ordered = new LinkedHashMap<>();
+        rules.forEach(rule -> ordered.put(rule[0], rule[1]));
+        Collections.reverse(rules);
+        Map<String, String> reversed = new LinkedHashMap<>();
+        rules.forEach(rule -> reversed.put(rule[0], rule[1]));
+        return Arrays.asList(new StructureRuleMatcher(ordered), new StructureRuleMatcher(reversed));
+    }
+
+    private static void assertMatch(String imageName, String filepart, String docstruct, String groupNumber) {
+        for (StructureRuleMatcher matcher : matchers()) {
+            StructureMatch match = matcher.match(imageName);
+            assertEquals(imageName, filepart, match == null ? null : match.getFilepart());
+            if (match != null) {
+                assertEquals(imageName, docstruct, match.getDocstruct());
+                assertEquals(imageName, groupNumber, match.getGroupNumber());
+                assertEquals(imageName, filepart + groupNumber, match.getKey());
+            }
+        }
+    }
+
+    @Test
+    public void testLongestFilepartWins() {
+        assertMatch("Cod_VD.tif", "VD", "FrontCover", "");
+        assertMatch("Cod_VDS.tif", "VDS", "BuchspiegelVorne", "");
+        assertMatch("Cod_VDSr.tif", "VDS", "BuchspiegelVorne", "");
+        assertMatch("Cod_Farbkarte.tif", "Farbkarte", "ColorChart", "");
+        assertMatch("Cod_Farbkarte_Buchblock.tif", "Farbkarte_Buchblock", "ColorChartBookBlock", "");
+        assertMatch("Cod_Farbkarte_Bucheinband.tif", "Farbkarte_Bucheinband", "ColorChartBinding", "");
+        // a filepart must be preceded by an underscore
+        assertMatch("Cod_XFarbkarte_Buchblock.tif", null, null, null);
+        assertMatch("CodXVDS.tif", null, null, null);
+        assertMatch("Cod_Farbkarte_Buchblock2.tif", "Farbkarte_Buchblock", "ColorChartBookBlock", "2");
+    }
+
+    @Test
+    public void testGroupNumberAndPageSide() {
+        assertMatch("Cod_VS1r.tif", "VS", "Endsheet", "1");
+        assertMatch("Cod_VS2v.tif", "VS", "Endsheet", "2");
+        assertMatch("Cod_VS3.tif", "VS", "Endsheet", "3");
+        assertMatch("Cod_VSr.tif", "VS", "Endsheet", "");
+        assertMatch("Cod_VSv.jpg", "VS", "Endsheet", "");
+        assertMatch("Cod_VDS1v.tif", "VDS", "BuchspiegelVorne", "1");
+        // only a single digit and r or v after it
+        assertMatch("Cod_VS12r.tif", null, null, null);
+        assertMatch("Cod_VSr1.tif", null, null, null);
+        assertMatch("Cod_VSx.tif", null, null, null);
+        assertMatch("Cod_VSrv.tif", null, null, null);
+    }
+
+    @Test
+    public void testNamesWithoutMatch() {
+        assertMatch("Cod_0001r.tif", null, null, null);
+        assertMatch("VS1r.tif", null, null, null);
+        assertMatch("Cod_VS1r", null, null, null);
+        assertMatch("Cod_VS1r.", null, null, null);
+        assertMatch("Cod_VS1r.ti-f", null, null, null);
+        assertMatch("Cod_vs1r.tif", null, null, null);
+        assertMatch("Cod_VS1r_a.tif", null, null, null);
+    }
+
+    @Test
+    public void testEmptyRules() {
+        Map<String, String> rules = new LinkedHashMap<>();
+        rules.put("", "Empty");
+        assertNull(new StructureRuleMatcher(rules).match("Cod_.tif"));
+        assertNull(new StructureRuleMatcher(Collections.emptyMap()).match("Cod_VS1r.tif"));
+    }
+}
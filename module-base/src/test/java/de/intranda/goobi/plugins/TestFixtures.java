@@ -0,0 +1,100 @@
+package de.intranda.goobi.plugins;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.XMLConfiguration;
+import org.goobi.beans.Process;
+
+import ugh.dl.Prefs;
+import ugh.exceptions.PreferencesException;
+
+/**
+ * Configuration, ruleset, processes and image listings shared by the tests
+ */
+final class TestFixtures {
+
+    /** the configuration shipped with the plugin, the test resources include the install folder */
+    private static final String CONFIGURATION_FILE = "/plugin_intranda_step_imagename_analyse.xml";
+
+    private static final String RULESET_FILE = "/ruleset.xml";
+
+    /** listing of a single manuscript with all structure parts and an image without a match */
+    static final String LISTING_FILE = "/listing.txt";
+
+    private static Prefs prefs;
+
+    private TestFixtures() {
+    }
+
+    /**
+     * Create the plugin configuration with changed settings
+     *
+     * @param settings pairs of element name and value, e.g. "orderImagesByDocstruct", "true"
+     * @return the configuration
+     */
+    static AnalyzerConfiguration configuration(String... settings) throws ConfigurationException {
+        XMLConfiguration config = new XMLConfiguration(TestFixtures.class.getResource(CONFIGURATION_FILE));
+        for (int i = 0; i + 1 < settings.length; i += 2) {
+            config.setProperty(settings[i], settings[i + 1]);
+        }
+        return new AnalyzerConfiguration(config, "");
+    }
+
+    /**
+     * @return the ruleset of the tests, loaded once
+     */
+    static synchronized Prefs prefs() throws IOException, PreferencesException {
+        if (prefs == null) {
+            Path ruleset = Files.createTempFile("ruleset", ".xml");
+            try (InputStream in = TestFixtures.class.getResourceAsStream(RULESET_FILE)) {
+                Files.copy(in, ruleset, StandardCopyOption.REPLACE_EXISTING);
+            }
+            Prefs loaded = new Prefs();
+            loaded.loadPrefs(ruleset.toString());
+            Files.delete(ruleset);
+            prefs = loaded;
+        }
+        return prefs;
+    }
+
+    static Process process() {
+        Process process = new Process();
+        process.setId(1);
+        process.setTitel("Cod_Guelf_1");
+        return process;
+    }
+
+    /**
+     * @param resource the listing file
+     * @return the image names of the listing in folder order
+     */
+    static List<String> readListing(String resource) throws IOException {
+        try (InputStream in = TestFixtures.class.getResourceAsStream(resource)) {
+            List<String> names = new ArrayList<>();
+            for (String line : new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\n")) {
+                if (!line.trim().isEmpty()) {
+                    names.add(line.trim());
+                }
+            }
+            return names;
+        }
+    }
+
+    /**
+     * Generate the listing of a large image folder, see {@link ImageNameGenerator}
+     *
+     * @param size number of image names
+     * @return the image names in folder order
+     */
+    static List<String> generateListing(int size) {
+        return ImageNameGenerator.generate(size, 42L);
+    }
+}
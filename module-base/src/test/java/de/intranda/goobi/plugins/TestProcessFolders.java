@@ -0,0 +1,56 @@
+package de.intranda.goobi.plugins;
+
+import java.nio.file.Path;
+
+import org.goobi.beans.Process;
+
+/**
+ * Folders of the test processes. By default, the image folders only exist in the {@link InMemoryFolderSource} and the data folder is a temporary
+ * folder.
+ */
+class TestProcessFolders implements ProcessFolders {
+
+    static final String IMAGES_FOLDER = "/opt/digiverso/goobi/metadata/1/images/";
+
+    static final String IMAGE_FOLDER = IMAGES_FOLDER + "test_media/";
+
+    private final Path dataFolder;
+
+    private final String imagesFolder;
+
+    TestProcessFolders(Path dataFolder) {
+        this(dataFolder, IMAGES_FOLDER);
+    }
+
+    /**
+     * @param dataFolder folder for the files written by the plugin
+     * @param imagesFolder folder containing the image folders, ending with a slash
+     */
+    TestProcessFolders(Path dataFolder, String imagesFolder) {
+        this.dataFolder = dataFolder;
+        this.imagesFolder = imagesFolder;
+    }
+
+    /**
+     * @param name name of the folder in the configuration, e.g. jpeg
+     * @return the derivative folder of the test processes
+     */
+    static String getDerivativeFolder(String name) {
+        return IMAGES_FOLDER + "test_" + name + "/";
+    }
+
+    @Override
+    public String getImageFolder(Process process) {
+        return imagesFolder + "test_media/";
+    }
+
+    @Override
+    public String getDerivativeFolder(Process process, String name) {
+        return imagesFolder + "test_" + name + "/";
+    }
+
+    @Override
+    public Path getDataFolder(Process process) {
+        return dataFolder;
+    }
+}
@@ -0,0 +1,127 @@
+package de.intranda.goobi.plugins.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.configuration.ConfigurationException;
+import org.apache.commons.configuration.XMLConfiguration;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import de.intranda.goobi.plugins.AnalyzerConfiguration;
+import de.intranda.goobi.plugins.ImageNameGenerator;
+import de.intranda.goobi.plugins.PaginationBuilder;
+import de.intranda.goobi.plugins.PaginationMatcher;
+import de.intranda.goobi.plugins.StructureRuleMatcher;
+import ugh.dl.DigitalDocument;
+import ugh.dl.DocStruct;
+import ugh.dl.FileSet;
+import ugh.dl.Prefs;
+import ugh.exceptions.MetadataTypeNotAllowedException;
+import ugh.exceptions.PreferencesException;
+import ugh.exceptions.TypeNotAllowedAsChildException;
+import ugh.exceptions.TypeNotAllowedForParentException;
+
+/**
+ * Measures the stages of the image name analysis on synthetic folder listings, using the default plugin configuration from the install folder
+ * and the minimal ruleset of the tests. The listings and the ruleset come from the test jar of the base module.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageNameAnalysisBenchmark {
+
+    private static final String CONFIGURATION_FILE = "/plugin_intranda_step_imagename_analyse.xml";
+
+    private static final String RULESET_FILE = "/ruleset.xml";
+
+    @Param({ "100", "10000", "100000" })
+    private int size;
+
+    @Param({ "false", "true" })
+    private boolean orderImagesByDocstruct;
+
+    private List<String> imageNames;
+
+    private AnalyzerConfiguration configuration;
+
+    private Prefs prefs;
+
+    @Setup(Level.Trial)
+    public void setup() throws ConfigurationException, IOException, PreferencesException {
+        imageNames = ImageNameGenerator.generate(size, 42L);
+
+        XMLConfiguration config = new XMLConfiguration(ImageNameAnalysisBenchmark.class.getResource(CONFIGURATION_FILE));
+        config.setProperty("orderImagesByDocstruct", orderImagesByDocstruct);
+        configuration = new AnalyzerConfiguration(config, "");
+
+        Path ruleset = Files.createTempFile("ruleset", ".xml");
+        try (InputStream in = ImageNameAnalysisBenchmark.class.getResourceAsStream(RULESET_FILE)) {
+            Files.copy(in, ruleset, StandardCopyOption.REPLACE_EXISTING);
+        }
+        prefs = new Prefs();
+        prefs.loadPrefs(ruleset.toString());
+        Files.delete(ruleset);
+    }
+
+    @Benchmark
+    public void paginationRegex(Blackhole blackhole) {
+        Pattern pattern = configuration.getImagePattern();
+        for (String imageName : imageNames) {
+            Matcher matcher = pattern.matcher(imageName);
+            blackhole.consume(matcher.matches() ? matcher.group(1) : null);
+        }
+    }
+
+    @Benchmark
+    public void paginationMatcher(Blackhole blackhole) {
+        PaginationMatcher matcher = configuration.getPaginationMatcher();
+        for (String imageName : imageNames) {
+            blackhole.consume(matcher.match(imageName));
+        }
+    }
+
+    @Benchmark
+    public void structureRuleClassification(Blackhole blackhole) {
+        StructureRuleMatcher matcher = configuration.getStructureRuleMatcher();
+        for (String imageName : imageNames) {
+            blackhole.consume(matcher.match(imageName));
+        }
+    }
+
+    @Benchmark
+    public DigitalDocument buildMetsStructure()
+            throws TypeNotAllowedForParentException, TypeNotAllowedAsChildException, MetadataTypeNotAllowedException {
+        DigitalDocument digDoc = new DigitalDocument();
+        digDoc.setFileSet(new FileSet());
+        DocStruct logical = digDoc.createDocStruct(prefs.getDocStrctTypeByName("Monograph"));
+        digDoc.setLogicalDocStruct(logical);
+        DocStruct physical = digDoc.createDocStruct(prefs.getDocStrctTypeByName("BoundBook"));
+        digDoc.setPhysicalDocStruct(physical);
+
+        new PaginationBuilder(configuration, prefs).build(digDoc, physical, logical, "/opt/digiverso/goobi/metadata/1/images/master_media/",
+                imageNames);
+        return digDoc;
+    }
+}